@@ -1,20 +1,20 @@
 package in.uncod.android;
 
-import java.io.BufferedReader;
+import in.uncod.android.io.DirectoryDeleter;
+import in.uncod.android.io.FileCopier;
+import in.uncod.android.io.Streams;
+import in.uncod.android.widget.IncrementalAdapterLoader;
+
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 
+import android.annotation.SuppressLint;
 import android.app.Activity;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
@@ -31,18 +31,79 @@ public class Util {
     /**
      * Adds all given items to the given adapter and notifies that the data set changed
      * 
-     * ArrayAdapter.addAll is API level 11+, so our own implementation is needed
+     * The adapter is notified once, no matter how many items are added. For very large collections, consider
+     * addAllToAdapter(ArrayAdapter, Collection, int), which spreads the work over multiple frames.
      * 
      * @param arrayAdapter
      * @param items
      */
     public static <TItems> void addAllToAdapter(ArrayAdapter<TItems> arrayAdapter, Collection<TItems> items) {
         if (arrayAdapter != null) {
+            appendToAdapter(arrayAdapter, items);
+
+            arrayAdapter.notifyDataSetChanged();
+        }
+    }
+
+    /**
+     * Adds the given items to the given adapter in chunks, notifying that the data set changed once per chunk. The
+     * first chunk is added immediately; the rest are added on subsequent frames. Must be called on the main thread.
+     * 
+     * @param arrayAdapter
+     * @param items
+     * @param chunkSize
+     *            The maximum number of items to add per frame
+     * @return The loader adding the items, which can be used to cancel the remaining chunks
+     */
+    public static <TItems> IncrementalAdapterLoader<TItems> addAllToAdapter(ArrayAdapter<TItems> arrayAdapter,
+            Collection<? extends TItems> items, int chunkSize) {
+        return addAllToAdapter(arrayAdapter, items, chunkSize, null);
+    }
+
+    /**
+     * Adds the given items to the given adapter in chunks, as addAllToAdapter(ArrayAdapter, Collection, int) does, and
+     * notifies the given listener once all of them have been added. The listener is passed in rather than set on the
+     * returned loader, because a collection that fits in one chunk is added before this method returns.
+     * 
+     * @param arrayAdapter
+     * @param items
+     * @param chunkSize
+     *            The maximum number of items to add per frame
+     * @param listener
+     *            If not null, notified after the last chunk has been added
+     * @return The loader adding the items, which can be used to cancel the remaining chunks
+     */
+    public static <TItems> IncrementalAdapterLoader<TItems> addAllToAdapter(ArrayAdapter<TItems> arrayAdapter,
+            Collection<? extends TItems> items, int chunkSize,
+            IncrementalAdapterLoader.OnLoadFinishedListener listener) {
+        IncrementalAdapterLoader<TItems> loader = new IncrementalAdapterLoader<TItems>(arrayAdapter, items,
+                chunkSize, listener);
+        loader.start();
+
+        return loader;
+    }
+
+    /**
+     * Adds all given items to the given adapter without notifying that the data set changed. The caller is
+     * responsible for calling notifyDataSetChanged() afterward (which also turns notifyOnChange back on).
+     * 
+     * ArrayAdapter.addAll is API level 11+, so items are added one at a time on older platforms
+     * 
+     * @param arrayAdapter
+     * @param items
+     */
+    @SuppressLint("NewApi")
+    public static <TItems> void appendToAdapter(ArrayAdapter<TItems> arrayAdapter, Collection<? extends TItems> items) {
+        // Otherwise each add() would notify observers (and relayout any attached list)
+        arrayAdapter.setNotifyOnChange(false);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            arrayAdapter.addAll(items);
+        }
+        else {
             for (TItems item : items) {
                 arrayAdapter.add(item);
             }
-
-            arrayAdapter.notifyDataSetChanged();
         }
     }
 
@@ -57,40 +118,12 @@ public class Util {
      *            The destination File (should point to an actual file, not a directory)
      * 
      * @throws IOException
+     * 
+     * @see FileCopier#copy(Activity, Uri, File, in.uncod.android.util.threading.CancellationToken,
+     *      FileCopier.OnCopyProgressListener) for cancellation and progress reporting
      */
     public static void copyFile(Activity activity, Uri origin, File destination) throws IOException {
-        InputStream fileIs = null;
-
-        if (origin.getScheme().equals(ContentResolver.SCHEME_CONTENT)) {
-            ContentResolver resolver = activity.getContentResolver();
-
-            try {
-                fileIs = resolver.openInputStream(origin);
-            }
-            catch (FileNotFoundException e) {
-                // load media on the DoD streak, content provider is broken... bullshit :/
-                File file = getFileFromUri(activity, origin);
-                fileIs = new FileInputStream(file);
-            }
-        }
-        else if (origin.getScheme().equals(ContentResolver.SCHEME_FILE)) {
-            fileIs = new FileInputStream(origin.getPath());
-        }
-
-        if (fileIs == null)
-            throw new IllegalArgumentException("origin does not appear to be a valid file for copying");
-
-        FileOutputStream fos = new FileOutputStream(destination);
-
-        int read;
-        byte[] bytes = new byte[1024];
-
-        while ((read = fileIs.read(bytes)) != -1) {
-            fos.write(bytes, 0, read);
-        }
-        fos.flush();
-        fos.close();
-        fileIs.close();
+        FileCopier.copy(activity, origin, destination, null, null);
     }
 
     public static void setStatusBarVisibility(Activity activity) {
@@ -133,22 +166,16 @@ public class Util {
         return String.format("%" + n + "s", s).replace(' ', '0');
     }
 
+    /**
+     * Deletes a directory and everything in it
+     * 
+     * @param path
+     * @return true if everything was deleted
+     * 
+     * @see DirectoryDeleter for parallel and background deletion, and for details about failures
+     */
     static public boolean deleteDirectory(File path) {
-        if (path.exists()) {
-            File[] files = path.listFiles();
-            if (files == null) {
-                return true;
-            }
-            for (int i = 0; i < files.length; i++) {
-                if (files[i].isDirectory()) {
-                    deleteDirectory(files[i]);
-                }
-                else {
-                    files[i].delete();
-                }
-            }
-        }
-        return (path.delete());
+        return DirectoryDeleter.delete(path).isSuccessful();
     }
 
     public static File getFileFromUri(Activity activity, Uri contentUri) {
@@ -172,18 +199,18 @@ public class Util {
         return cursor.getString(column_index);
     }
 
+    /**
+     * Reads an entire UTF-8 stream into a String (line terminators are preserved). The stream is closed.
+     * 
+     * @param is
+     * @return The stream contents
+     * 
+     * @throws IOException
+     * 
+     * @see Streams for other charsets, size hints, and reading a line at a time
+     */
     public static String convertStreamToString(InputStream is) throws IOException {
-        BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        String line = null;
-
-        while ((line = reader.readLine()) != null) {
-            sb.append(line);
-        }
-
-        is.close();
-
-        return sb.toString();
+        return Streams.readString(is, Streams.DEFAULT_CHARSET, -1);
     }
 
     public static int dpToPx(Context context, int dp) {
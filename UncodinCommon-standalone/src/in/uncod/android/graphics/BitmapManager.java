@@ -182,6 +182,29 @@ public class BitmapManager {
         }
     }
 
+    /**
+     * Gets a bitmap from this manager's memory cache
+     * 
+     * @param key
+     *            The key the bitmap was cached with
+     * @return The bitmap, or null if it isn't cached
+     */
+    public Bitmap getCachedBitmap(String key) {
+        return mCache.get(key);
+    }
+
+    /**
+     * Puts a bitmap loaded elsewhere (e.g. a video frame) in this manager's memory cache. The cache owns the bitmap
+     * from then on, so it must not be recycled by the caller.
+     * 
+     * @param key
+     *            A key that can't collide with the hashes of image files (e.g. one with a prefix)
+     * @param bitmap
+     */
+    public void putCachedBitmap(String key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
     private void setImage(final Image image) {
         final Bitmap bitmap = mCache.get(image.getHash());
         if (bitmap != null) {
@@ -290,8 +313,9 @@ public class BitmapManager {
         public Image(String imageLocation, ImageView imageView, int maxSize, boolean blurred,
                 OnBitmapLoadedListener runAfterImageUpdated) {
             this.imageLocation = new File(imageLocation);
-            this.hash = Util.md5(imageLocation + maxSize) + ((blurred) ? "blur" : "");
-            this.unblurredHash = Util.md5(imageLocation + maxSize);
+            // Include the modification time, so a file that is overwritten in place isn't served from the cache
+            this.unblurredHash = Util.md5(imageLocation + this.imageLocation.lastModified() + maxSize);
+            this.hash = unblurredHash + ((blurred) ? "blur" : "");
             this.imageView = imageView;
             this.maxSize = maxSize;
             this.runnable = runAfterImageUpdated;
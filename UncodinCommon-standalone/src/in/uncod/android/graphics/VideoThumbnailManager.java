@@ -0,0 +1,315 @@
+package in.uncod.android.graphics;
+
+import in.uncod.android.Util;
+import in.uncod.android.util.threading.CancellationToken;
+import in.uncod.android.util.threading.TaskExecutors;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import android.annotation.SuppressLint;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Log;
+
+/**
+ * Loads poster frames of video files, so videos can be previewed without starting a decoder.
+ * <p/>
+ * Frames are extracted on a background thread (with MediaMetadataRetriever on API 10+, ThumbnailUtils otherwise),
+ * scaled to the requested size and cached in two tiers, both keyed by the video's path, modification time and the
+ * requested size: the memory cache shared with BitmapManager, and JPEG files in the application's cache directory.
+ */
+public class VideoThumbnailManager {
+    /**
+     * Interface for receiving loaded thumbnails
+     */
+    public interface OnThumbnailLoadedListener {
+        /**
+         * Called on the UI thread when a thumbnail has been loaded, unless its load was canceled
+         *
+         * @param thumbnail
+         *            The thumbnail, which is owned by the cache and must not be recycled
+         */
+        void onThumbnailLoaded(Bitmap thumbnail);
+    }
+
+    /**
+     * The default maximum size of the disk cache, in bytes
+     */
+    public static final long DEFAULT_MAX_DISK_CACHE_SIZE = 8 * 1024 * 1024;
+
+    private static final String TAG = "VideoThumbnailManager";
+    private static final String MEMORY_KEY_PREFIX = "video:";
+    private static final String DISK_CACHE_DIRECTORY = "video-thumbnails";
+    private static final String DISK_CACHE_EXTENSION = ".jpg";
+    private static final int JPEG_QUALITY = 85;
+
+    private static VideoThumbnailManager instance;
+
+    private Context mApplicationContext;
+    private File mDiskCacheDirectory;
+    private volatile long mMaxDiskCacheSize = DEFAULT_MAX_DISK_CACHE_SIZE;
+
+    /**
+     * Gets the VideoThumbnailManager
+     *
+     * @param context
+     *            The Context to associate with the VideoThumbnailManager
+     * @return A VideoThumbnailManager instance
+     */
+    public static synchronized VideoThumbnailManager get(Context context) {
+        if (instance == null) {
+            instance = new VideoThumbnailManager(context);
+        }
+
+        return instance;
+    }
+
+    private VideoThumbnailManager(Context context) {
+        mApplicationContext = context.getApplicationContext();
+        mDiskCacheDirectory = new File(mApplicationContext.getCacheDir(), DISK_CACHE_DIRECTORY);
+    }
+
+    /**
+     * Sets the maximum size of the disk cache. The least recently written thumbnails are deleted when it is exceeded.
+     *
+     * @param maxSize
+     *            The size in bytes
+     */
+    public void setMaxDiskCacheSize(long maxSize) {
+        mMaxDiskCacheSize = maxSize;
+    }
+
+    /**
+     * Gets a thumbnail from the memory cache, without loading it
+     *
+     * @param videoFile
+     * @param maxSize
+     *            The maximum width or height of the thumbnail
+     * @return The thumbnail, or null if it isn't in the memory cache
+     */
+    public Bitmap getCachedThumbnail(File videoFile, int maxSize) {
+        return getMemoryCache().getCachedBitmap(MEMORY_KEY_PREFIX + getHash(videoFile, maxSize));
+    }
+
+    /**
+     * Loads a thumbnail of the given video. If it is in the memory cache, the listener is called before this method
+     * returns; otherwise the thumbnail is read from the disk cache or extracted on a background thread.
+     *
+     * @param videoFile
+     * @param maxSize
+     *            The maximum width or height of the thumbnail. Frames that exceed this size in either dimension will be
+     *            scaled down, with their aspect ratio preserved.
+     * @param listener
+     *            Notified on the UI thread once the thumbnail is loaded. Not notified if the video has no frame that
+     *            can be extracted.
+     * @return A token that can be used to cancel the load
+     */
+    public CancellationToken loadThumbnail(File videoFile, final int maxSize, final OnThumbnailLoadedListener listener) {
+        final CancellationToken token = new CancellationToken();
+        final String path = videoFile.getAbsolutePath();
+        final String hash = getHash(videoFile, maxSize);
+        final BitmapManager memoryCache = getMemoryCache();
+
+        Bitmap cached = memoryCache.getCachedBitmap(MEMORY_KEY_PREFIX + hash);
+        if (cached != null) {
+            listener.onThumbnailLoaded(cached);
+
+            return token;
+        }
+
+        // Loads of the same thumbnail run one at a time, so only the first extracts the frame
+        TaskExecutors.serial().execute(hash, new Runnable() {
+            @Override
+            public void run() {
+                if (token.isCanceled()) {
+                    return;
+                }
+
+                // A load of the same thumbnail queued before this one may have cached it already
+                Bitmap thumbnail = memoryCache.getCachedBitmap(MEMORY_KEY_PREFIX + hash);
+                if (thumbnail == null) {
+                    thumbnail = loadThumbnail(path, hash, maxSize);
+                    if (thumbnail == null) {
+                        return;
+                    }
+
+                    // Cached here rather than on the UI thread, so the next queued load is sure to find it
+                    memoryCache.putCachedBitmap(MEMORY_KEY_PREFIX + hash, thumbnail);
+                }
+
+                final Bitmap loadedThumbnail = thumbnail;
+                TaskExecutors.mainThread().execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!token.isCanceled()) {
+                            listener.onThumbnailLoaded(loadedThumbnail);
+                        }
+                    }
+                });
+            }
+        });
+
+        return token;
+    }
+
+    private BitmapManager getMemoryCache() {
+        return BitmapManager.get(mApplicationContext);
+    }
+
+    private static String getHash(File videoFile, int maxSize) {
+        return Util.md5(videoFile.getAbsolutePath() + ":" + videoFile.lastModified() + ":" + maxSize);
+    }
+
+    private Bitmap loadThumbnail(String path, String hash, int maxSize) {
+        File cacheFile = new File(mDiskCacheDirectory, hash + DISK_CACHE_EXTENSION);
+
+        if (cacheFile.exists()) {
+            Bitmap thumbnail = BitmapFactory.decodeFile(cacheFile.getAbsolutePath());
+            if (thumbnail != null) {
+                return thumbnail;
+            }
+        }
+
+        Bitmap thumbnail;
+        try {
+            thumbnail = scale(extractFrame(path), maxSize);
+        }
+        catch (OutOfMemoryError e) {
+            Log.w(TAG, "Out of memory extracting a frame of " + path);
+            return null;
+        }
+
+        if (thumbnail != null) {
+            writeToDiskCache(thumbnail, cacheFile);
+        }
+
+        return thumbnail;
+    }
+
+    @SuppressLint("NewApi")
+    private static Bitmap extractFrame(String path) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+            MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+            try {
+                retriever.setDataSource(path);
+
+                Bitmap frame = retriever.getFrameAtTime();
+                if (frame != null) {
+                    return frame;
+                }
+            }
+            catch (RuntimeException e) {
+                // Thrown for files the retriever can't read; fall back to ThumbnailUtils
+                Log.w(TAG, "Unable to retrieve a frame of " + path, e);
+            }
+            finally {
+                retriever.release();
+            }
+        }
+
+        return ThumbnailUtils.createVideoThumbnail(path, MediaStore.Video.Thumbnails.MINI_KIND);
+    }
+
+    private static Bitmap scale(Bitmap frame, int maxSize) {
+        if (frame == null || (frame.getWidth() <= maxSize && frame.getHeight() <= maxSize)) {
+            return frame;
+        }
+
+        double factor = maxSize / (double) Math.max(frame.getWidth(), frame.getHeight());
+        int width = Math.max(1, (int) Math.round(frame.getWidth() * factor));
+        int height = Math.max(1, (int) Math.round(frame.getHeight() * factor));
+
+        Bitmap scaled = Bitmap.createScaledBitmap(frame, width, height, true);
+        if (scaled != frame) {
+            frame.recycle();
+        }
+
+        return scaled;
+    }
+
+    private void writeToDiskCache(Bitmap thumbnail, File cacheFile) {
+        if (!mDiskCacheDirectory.isDirectory() && !mDiskCacheDirectory.mkdirs()) {
+            return;
+        }
+
+        // Write to a temporary file first, so a partially written thumbnail is never read back
+        File tempFile = new File(mDiskCacheDirectory, cacheFile.getName() + ".tmp");
+        FileOutputStream out = null;
+        try {
+            out = new FileOutputStream(tempFile);
+            thumbnail.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            out.close();
+            out = null;
+
+            if (!tempFile.renameTo(cacheFile)) {
+                tempFile.delete();
+            }
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Unable to cache thumbnail " + cacheFile, e);
+            tempFile.delete();
+        }
+        finally {
+            if (out != null) {
+                try {
+                    out.close();
+                }
+                catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        trimDiskCache();
+    }
+
+    private synchronized void trimDiskCache() {
+        // Leave out temporary files, which may still be being written
+        File[] files = mDiskCacheDirectory.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File directory, String filename) {
+                return filename.endsWith(DISK_CACHE_EXTENSION);
+            }
+        });
+        if (files == null) {
+            return;
+        }
+
+        long size = 0;
+        for (File file : files) {
+            size += file.length();
+        }
+
+        if (size <= mMaxDiskCacheSize) {
+            return;
+        }
+
+        // Delete the least recently written thumbnails first
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File lhs, File rhs) {
+                long lhsModified = lhs.lastModified();
+                long rhsModified = rhs.lastModified();
+
+                return lhsModified < rhsModified ? -1 : (lhsModified == rhsModified ? 0 : 1);
+            }
+        });
+
+        for (int i = 0; i < files.length && size > mMaxDiskCacheSize; i++) {
+            long length = files[i].length();
+            if (files[i].delete()) {
+                size -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package in.uncod.android.io;
+
+import in.uncod.android.util.threading.TaskExecutors;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+
+/**
+ * Deletes directory trees without recursion, so that deep trees can't overflow the stack.
+ * <p/>
+ * Large trees (e.g. thumbnail caches) can be deleted in parallel by splitting the top-level entries across an
+ * Executor, or logically deleted right away with deleteInBackground(), which renames the directory out of the way and
+ * removes its contents on a background thread.
+ */
+public class DirectoryDeleter {
+    private static final String DELETING_SUFFIX = ".deleting-";
+
+    /**
+     * The outcome of a deletion
+     */
+    public static class Result {
+        private int mDeletedFiles;
+        private int mDeletedDirectories;
+        private final List<File> mFailures = new ArrayList<File>();
+
+        /**
+         * @return The number of files (and symbolic links) deleted
+         */
+        public int getDeletedFileCount() {
+            return mDeletedFiles;
+        }
+
+        /**
+         * @return The number of directories deleted
+         */
+        public int getDeletedDirectoryCount() {
+            return mDeletedDirectories;
+        }
+
+        /**
+         * @return The files and directories that could not be deleted
+         */
+        public List<File> getFailures() {
+            return Collections.unmodifiableList(mFailures);
+        }
+
+        /**
+         * @return true if everything was deleted
+         */
+        public boolean isSuccessful() {
+            return mFailures.isEmpty();
+        }
+
+        private synchronized void add(Result other) {
+            mDeletedFiles += other.mDeletedFiles;
+            mDeletedDirectories += other.mDeletedDirectories;
+            mFailures.addAll(other.mFailures);
+        }
+    }
+
+    /**
+     * Interface for finding out when a background deletion has finished
+     */
+    public interface OnDeletionFinishedListener {
+        /**
+         * Called on the main thread after a background deletion has finished
+         * 
+         * @param result
+         */
+        void onDeletionFinished(Result result);
+    }
+
+    private DirectoryDeleter() {
+    }
+
+    /**
+     * Deletes a file, or a directory and everything in it, on the calling thread
+     * 
+     * @param path
+     * @return The deletion result. If path doesn't exist, it is reported as a failure.
+     */
+    public static Result delete(File path) {
+        Result result = new Result();
+
+        if (!path.exists()) {
+            result.mFailures.add(path);
+        }
+        else {
+            deleteTree(path, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Deletes a directory and everything in it, splitting the work across the given executor. Blocks until the
+     * deletion has finished, so this must not be called from one of the executor's own threads.
+     * 
+     * @param path
+     * @param executor
+     *            The executor to run on, e.g. TaskExecutors.io()
+     * @param parallelism
+     *            The number of tasks to split the directory's entries into
+     * @return The deletion result. If path doesn't exist, it is reported as a failure.
+     */
+    public static Result delete(File path, Executor executor, int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+
+        // As in delete(File), a symbolic link to a directory is only unlinked; its target's contents are left alone
+        if (!isRealDirectory(path)) {
+            return delete(path);
+        }
+
+        File[] entries = path.listFiles();
+        if (entries == null || entries.length < 2 || parallelism == 1) {
+            return delete(path);
+        }
+
+        final Result result = new Result();
+        int taskCount = Math.min(parallelism, entries.length);
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+
+        // Deal out the entries so that each task gets a similar mix of files and subtrees
+        for (int task = 0; task < taskCount; task++) {
+            final List<File> taskEntries = new ArrayList<File>(entries.length / taskCount + 1);
+            for (int i = task; i < entries.length; i += taskCount) {
+                taskEntries.add(entries[i]);
+            }
+
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Result taskResult = new Result();
+                        for (File entry : taskEntries) {
+                            deleteTree(entry, taskResult);
+                        }
+
+                        result.add(taskResult);
+                    }
+                    finally {
+                        latch.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            latch.await();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Now that the tasks are done, the directory itself should be empty
+        Result rootResult = new Result();
+        deleteEntry(path, true, rootResult);
+        result.add(rootResult);
+
+        return result;
+    }
+
+    /**
+     * Logically deletes a file or directory right away, and physically deletes it on a background thread. The path is
+     * first renamed (so it no longer exists under its old name, and can be recreated immediately); if the rename
+     * fails, it is deleted in place instead.
+     * 
+     * @param path
+     * @param listener
+     *            If not null, this listener will be notified on the main thread once the deletion has finished
+     * @return true if the path was renamed, so the caller can consider it gone
+     */
+    public static boolean deleteInBackground(File path, final OnDeletionFinishedListener listener) {
+        File renamed = new File(path.getParentFile(), path.getName() + DELETING_SUFFIX + System.nanoTime());
+
+        final boolean wasRenamed = path.renameTo(renamed);
+        final File target = wasRenamed ? renamed : path;
+
+        TaskExecutors.io().execute(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = delete(target);
+
+                if (listener != null) {
+                    TaskExecutors.mainThread().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onDeletionFinished(result);
+                        }
+                    });
+                }
+            }
+        });
+
+        return wasRenamed;
+    }
+
+    /**
+     * Deletes a tree iteratively: files are deleted as they're found, and directories are deleted afterward, deepest
+     * first
+     */
+    private static void deleteTree(File root, Result result) {
+        if (!isRealDirectory(root)) {
+            deleteEntry(root, false, result);
+            return;
+        }
+
+        List<File> directories = new ArrayList<File>();
+        LinkedList<File> pending = new LinkedList<File>();
+        pending.add(root);
+
+        while (!pending.isEmpty()) {
+            File directory = pending.removeLast();
+            directories.add(directory);
+
+            File[] entries = directory.listFiles();
+            if (entries == null)
+                continue; // Unreadable; the directory delete below will fail and be reported
+
+            for (File entry : entries) {
+                if (isRealDirectory(entry)) {
+                    pending.add(entry);
+                }
+                else {
+                    deleteEntry(entry, false, result);
+                }
+            }
+        }
+
+        // Every directory was discovered after its parent, so deleting in reverse order removes children first
+        for (int i = directories.size() - 1; i >= 0; i--) {
+            deleteEntry(directories.get(i), true, result);
+        }
+    }
+
+    private static void deleteEntry(File entry, boolean isDirectory, Result result) {
+        if (entry.delete()) {
+            if (isDirectory) {
+                result.mDeletedDirectories++;
+            }
+            else {
+                result.mDeletedFiles++;
+            }
+        }
+        else {
+            result.mFailures.add(entry);
+        }
+    }
+
+    /**
+     * @return true if the given file is a directory, and not a symbolic link to one (whose target shouldn't be
+     *         deleted)
+     */
+    private static boolean isRealDirectory(File file) {
+        if (!file.isDirectory())
+            return false;
+
+        try {
+            File parent = file.getParentFile();
+            File canonical = parent == null ? file.getCanonicalFile() : new File(parent.getCanonicalFile(),
+                    file.getName());
+
+            return canonical.getCanonicalFile().equals(canonical.getAbsoluteFile());
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package in.uncod.android.io;
+
+import in.uncod.android.Util;
+import in.uncod.android.util.threading.CancellationToken;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.LinkedList;
+
+import android.app.Activity;
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+/**
+ * Copies files and streams.
+ * <p/>
+ * When both ends are files (including content URIs backed by a file descriptor), data is moved with
+ * FileChannel.transferTo(), which lets the kernel do the copy. Otherwise, data is copied through a pooled 64 KB
+ * buffer. All copies can be cancelled via a CancellationToken and report progress as they go.
+ */
+public class FileCopier {
+    /**
+     * The size of the buffers used for stream copies
+     */
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    // Channel transfers are split up so that cancellation and progress are checked regularly
+    private static final long TRANSFER_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 4;
+
+    private static final LinkedList<byte[]> sBufferPool = new LinkedList<byte[]>();
+
+    /**
+     * Interface for receiving copy progress. Progress is reported on the thread performing the copy.
+     */
+    public interface OnCopyProgressListener {
+        /**
+         * Called after each chunk of data has been copied
+         * 
+         * @param bytesCopied
+         *            The number of bytes copied so far
+         * @param totalBytes
+         *            The total number of bytes to copy, or -1 if unknown
+         */
+        void onCopyProgress(long bytesCopied, long totalBytes);
+    }
+
+    private FileCopier() {
+    }
+
+    /**
+     * Resolves a file by URI and copies it to the destination
+     * 
+     * @param activity
+     *            The Activity whose context will be used for getting the ContentResolver
+     * @param origin
+     *            The origin file's URI (will be resolved via ContentResolver if necessary)
+     * @param destination
+     *            The destination File (should point to an actual file, not a directory)
+     * @param cancellationToken
+     *            If not null, the copy will stop when this token is cancelled
+     * @param listener
+     *            If not null, this listener will be notified of the copy progress
+     * @return true if the file was copied, or false if the copy was cancelled (in which case the destination is
+     *         deleted)
+     * 
+     * @throws IOException
+     *             Thrown if the origin can't be opened or read completely (in which case the destination is deleted)
+     */
+    public static boolean copy(Activity activity, Uri origin, File destination,
+            CancellationToken cancellationToken, OnCopyProgressListener listener) throws IOException {
+        if (origin.getScheme().equals(ContentResolver.SCHEME_CONTENT)) {
+            ContentResolver resolver = activity.getContentResolver();
+
+            ParcelFileDescriptor descriptor = null;
+            try {
+                descriptor = resolver.openFileDescriptor(origin, "r");
+            }
+            catch (FileNotFoundException e) {
+                // Some providers only serve streams (or partial asset file descriptors)
+            }
+
+            if (descriptor != null) {
+                FileInputStream input = new ParcelFileDescriptor.AutoCloseInputStream(descriptor);
+
+                // Pipes and sockets report an unknown size and can't be used with transferTo()
+                long size = descriptor.getStatSize();
+                if (size >= 0) {
+                    return copyChannel(input, size, destination, cancellationToken, listener);
+                }
+                else {
+                    return copyStream(input, -1, destination, cancellationToken, listener);
+                }
+            }
+
+            InputStream input = null;
+            try {
+                input = resolver.openInputStream(origin);
+            }
+            catch (FileNotFoundException e) {
+                // Fall back to the file path below
+            }
+
+            if (input != null) {
+                return copyStream(input, -1, destination, cancellationToken, listener);
+            }
+
+            // load media on the DoD streak, content provider is broken... bullshit :/
+            File file = getMediaStoreFile(activity, origin);
+            if (file == null)
+                throw new FileNotFoundException("Unable to open " + origin);
+
+            return copy(file, destination, cancellationToken, listener);
+        }
+        else if (origin.getScheme().equals(ContentResolver.SCHEME_FILE)) {
+            return copy(new File(origin.getPath()), destination, cancellationToken, listener);
+        }
+
+        throw new IllegalArgumentException("origin does not appear to be a valid file for copying");
+    }
+
+    /**
+     * Copies a file
+     * 
+     * @param origin
+     * @param destination
+     * @param cancellationToken
+     *            If not null, the copy will stop when this token is cancelled
+     * @param listener
+     *            If not null, this listener will be notified of the copy progress
+     * @return true if the file was copied, or false if the copy was cancelled (in which case the destination is
+     *         deleted)
+     * 
+     * @throws IOException
+     */
+    public static boolean copy(File origin, File destination, CancellationToken cancellationToken,
+            OnCopyProgressListener listener) throws IOException {
+        FileInputStream input = new FileInputStream(origin);
+
+        return copyChannel(input, origin.length(), destination, cancellationToken, listener);
+    }
+
+    /**
+     * Copies the contents of a stream to another stream. Neither stream is closed.
+     * 
+     * @param input
+     * @param output
+     * @param totalBytes
+     *            The number of bytes expected (for progress reporting), or -1 if unknown
+     * @param cancellationToken
+     *            If not null, the copy will stop when this token is cancelled
+     * @param listener
+     *            If not null, this listener will be notified of the copy progress
+     * @return true if the end of the input was reached, or false if the copy was cancelled
+     * 
+     * @throws IOException
+     */
+    public static boolean copy(InputStream input, OutputStream output, long totalBytes,
+            CancellationToken cancellationToken, OnCopyProgressListener listener) throws IOException {
+        byte[] buffer = acquireBuffer();
+
+        try {
+            long copied = 0;
+            int read;
+
+            while ((read = input.read(buffer)) != -1) {
+                if (isCanceled(cancellationToken))
+                    return false;
+
+                output.write(buffer, 0, read);
+                copied += read;
+
+                if (listener != null) {
+                    listener.onCopyProgress(copied, totalBytes);
+                }
+            }
+
+            output.flush();
+
+            return true;
+        }
+        finally {
+            releaseBuffer(buffer);
+        }
+    }
+
+    private static boolean copyChannel(FileInputStream input, long size, File destination,
+            CancellationToken cancellationToken, OnCopyProgressListener listener) throws IOException {
+        boolean completed = false;
+        FileOutputStream output = null;
+
+        try {
+            output = new FileOutputStream(destination);
+
+            FileChannel inChannel = input.getChannel();
+            FileChannel outChannel = output.getChannel();
+
+            long position = 0;
+            while (position < size) {
+                if (isCanceled(cancellationToken))
+                    return false;
+
+                long transferred = inChannel.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, size - position),
+                        outChannel);
+                if (transferred <= 0)
+                    throw new IOException("Origin was truncated while copying (copied " + position + " of " + size
+                            + " bytes)");
+
+                position += transferred;
+
+                if (listener != null) {
+                    listener.onCopyProgress(position, size);
+                }
+            }
+
+            output.close();
+            output = null;
+            completed = true;
+        }
+        finally {
+            closeQuietly(input);
+            closeQuietly(output);
+
+            if (!completed) {
+                destination.delete();
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean copyStream(InputStream input, long size, File destination,
+            CancellationToken cancellationToken, OnCopyProgressListener listener) throws IOException {
+        boolean completed = false;
+        FileOutputStream output = null;
+
+        try {
+            output = new FileOutputStream(destination);
+
+            if (copy(input, output, size, cancellationToken, listener)) {
+                output.close();
+                output = null;
+                completed = true;
+            }
+        }
+        finally {
+            closeQuietly(input);
+            closeQuietly(output);
+
+            if (!completed) {
+                destination.delete();
+            }
+        }
+
+        return completed;
+    }
+
+    /**
+     * Looks up the file behind a MediaStore URI
+     * 
+     * @return The file, or null if the URI isn't backed by MediaStore
+     */
+    private static File getMediaStoreFile(Activity activity, Uri origin) {
+        String path;
+        try {
+            path = Util.getFilePathFromUri(activity, origin);
+        }
+        catch (RuntimeException e) {
+            // The provider returned no cursor, or one without a DATA column
+            return null;
+        }
+
+        return path != null ? new File(path) : null;
+    }
+
+    private static boolean isCanceled(CancellationToken cancellationToken) {
+        return cancellationToken != null && cancellationToken.isCanceled();
+    }
+
+    private static byte[] acquireBuffer() {
+        synchronized (sBufferPool) {
+            byte[] buffer = sBufferPool.poll();
+            if (buffer != null) {
+                return buffer;
+            }
+        }
+
+        return new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        synchronized (sBufferPool) {
+            if (sBufferPool.size() < MAX_POOLED_BUFFERS) {
+                sBufferPool.add(buffer);
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            }
+            catch (IOException e) {
+                // Nothing useful can be done here
+            }
+        }
+    }
+}
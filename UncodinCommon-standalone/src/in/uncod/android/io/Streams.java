@@ -0,0 +1,169 @@
+package in.uncod.android.io;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URLConnection;
+
+/**
+ * Utilities for reading text from streams with an explicit charset.
+ * <p/>
+ * readString() reads the whole stream into a byte array (sized from a hint when one is available) and decodes it in
+ * one pass. readLines() decodes incrementally, so large payloads can be processed a line (or record) at a time
+ * without materializing them.
+ */
+public class Streams {
+    /**
+     * The charset used when none is specified
+     */
+    public static final String DEFAULT_CHARSET = "UTF-8";
+
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final int READER_BUFFER_SIZE = 16 * 1024;
+
+    // Size hints come from headers and file systems; don't trust them with an arbitrarily large allocation
+    private static final int MAX_SIZE_HINT = 64 * 1024 * 1024;
+
+    /**
+     * Interface for receiving a stream a line at a time
+     */
+    public interface OnLineReadListener {
+        /**
+         * Called for each line in the stream
+         * 
+         * @param line
+         *            The line, without its terminator
+         * @param lineNumber
+         *            The zero-based line number
+         * @return true to keep reading, or false to stop
+         */
+        boolean onLineRead(String line, int lineNumber);
+    }
+
+    private Streams() {
+    }
+
+    /**
+     * Reads an entire stream into a String. The stream is closed.
+     * 
+     * @param is
+     * @param charsetName
+     *            The name of the stream's charset, e.g. "UTF-8"
+     * @param sizeHint
+     *            The expected number of bytes in the stream, or -1 if unknown. An accurate hint avoids any
+     *            reallocation of the read buffer.
+     * @return The stream contents
+     * 
+     * @throws IOException
+     */
+    public static String readString(InputStream is, String charsetName, long sizeHint) throws IOException {
+        try {
+            // One extra byte lets us see the end of the stream without growing the buffer
+            int capacity = sizeHint >= 0 ? (int) Math.min(sizeHint, MAX_SIZE_HINT) + 1 : DEFAULT_BUFFER_SIZE;
+            byte[] buffer = new byte[capacity];
+            int length = 0;
+            int read;
+
+            while ((read = is.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+
+                if (length == buffer.length) {
+                    byte[] larger = new byte[buffer.length * 2];
+                    System.arraycopy(buffer, 0, larger, 0, length);
+                    buffer = larger;
+                }
+            }
+
+            return new String(buffer, 0, length, charsetName);
+        }
+        finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads an entire file into a String
+     * 
+     * @param file
+     * @param charsetName
+     *            The name of the file's charset, e.g. "UTF-8"
+     * @return The file contents
+     * 
+     * @throws IOException
+     */
+    public static String readString(File file, String charsetName) throws IOException {
+        return readString(new FileInputStream(file), charsetName, file.length());
+    }
+
+    /**
+     * Reads an entire response body into a String, using the response's Content-Length as a size hint and the charset
+     * from its Content-Type (or UTF-8 if none was specified)
+     * 
+     * @param connection
+     * @return The response body
+     * 
+     * @throws IOException
+     */
+    public static String readString(URLConnection connection) throws IOException {
+        return readString(connection.getInputStream(), getCharset(connection), connection.getContentLength());
+    }
+
+    /**
+     * Reads a stream a line at a time. Lines may be terminated by "\n", "\r", or "\r\n". The stream is closed.
+     * 
+     * @param is
+     * @param charsetName
+     *            The name of the stream's charset, e.g. "UTF-8"
+     * @param listener
+     *            Receives each line
+     * @return The number of lines read
+     * 
+     * @throws IOException
+     */
+    public static int readLines(InputStream is, String charsetName, OnLineReadListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(is, charsetName), READER_BUFFER_SIZE);
+
+        try {
+            int lineNumber = 0;
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                if (!listener.onLineRead(line, lineNumber++))
+                    break;
+            }
+
+            return lineNumber;
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets the charset of a response from its Content-Type header
+     * 
+     * @param connection
+     * @return The charset name, or DEFAULT_CHARSET if none was specified
+     */
+    public static String getCharset(URLConnection connection) {
+        String contentType = connection.getContentType();
+
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                parameter = parameter.trim();
+
+                if (parameter.regionMatches(true, 0, "charset=", 0, "charset=".length())) {
+                    String charset = parameter.substring("charset=".length()).replace("\"", "").trim();
+                    if (charset.length() > 0) {
+                        return charset;
+                    }
+                }
+            }
+        }
+
+        return DEFAULT_CHARSET;
+    }
+}
@@ -0,0 +1,377 @@
+package in.uncod.android.media;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.media.MediaPlayer;
+import android.util.Log;
+
+/**
+ * A process-wide pool of MediaPlayers, which bounds the number of players (and so native decoders) that exist at once,
+ * however many views want to play media.
+ *
+ * A player is acquired by an owner and given back with release(), after which it is reset and kept for reuse. When an
+ * owner acquires a player while the maximum number of players are in use, the least recently used player that isn't
+ * playing is taken from its owner (which is told through Owner.onPlayerEvicted()) and handed over. If every player is
+ * playing, a new player is created over the maximum, and the pool shrinks back as players are given back. The pool must
+ * only be used from the main thread.
+ *
+ * The pool can also prepare media ahead of time (see prefetch()), up to a budget and only with players that aren't in
+ * use. A prefetched player, or a prepared player given back with release(MediaPlayer, String), can then be taken by
+ * any owner that wants to play the same media location, without waiting for it to be prepared again.
+ */
+public class MediaPlayerPool {
+    /**
+     * Implemented by objects that acquire players from the pool
+     */
+    public interface Owner {
+        /**
+         * Called when the pool takes back the owner's player in order to give it to another owner. The player must
+         * not be used after this call.
+         *
+         * @param player
+         */
+        void onPlayerEvicted(MediaPlayer player);
+    }
+
+    /**
+     * The default maximum number of players
+     */
+    public static final int DEFAULT_MAX_PLAYERS = 3;
+
+    /**
+     * The default maximum number of players kept prepared for owners that haven't taken them yet
+     */
+    public static final int DEFAULT_PREFETCH_BUDGET = 1;
+
+    private static final String TAG = "MediaPlayerPool";
+
+    private static MediaPlayerPool sInstance;
+
+    // Players in use, in least-recently-used order
+    private LinkedHashMap<MediaPlayer, Owner> mActivePlayers = new LinkedHashMap<MediaPlayer, Owner>(16, 0.75f, true);
+    private ArrayList<MediaPlayer> mIdlePlayers = new ArrayList<MediaPlayer>();
+    private int mMaxPlayers = DEFAULT_MAX_PLAYERS;
+
+    // Players prepared (or being prepared) ahead of time, keyed by media location, in least-recently-used order
+    private LinkedHashMap<String, PrefetchedPlayer> mPrefetchedPlayers = new LinkedHashMap<String, PrefetchedPlayer>(
+            16, 0.75f, true);
+    private int mPrefetchBudget = DEFAULT_PREFETCH_BUDGET;
+    private PrefetchOwner mPrefetchOwner = new PrefetchOwner();
+
+    private static class PrefetchedPlayer {
+        MediaPlayer player;
+        boolean prepared;
+    }
+
+    /**
+     * @return The pool shared by the process
+     */
+    public static MediaPlayerPool getInstance() {
+        if (sInstance == null) {
+            sInstance = new MediaPlayerPool();
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Sets the maximum number of players, evicting the least recently used ones that aren't playing if more are in use
+     *
+     * @param maxPlayers
+     */
+    public void setMaxPlayers(int maxPlayers) {
+        if (maxPlayers < 1) {
+            throw new IllegalArgumentException("maxPlayers must be at least 1");
+        }
+
+        mMaxPlayers = maxPlayers;
+
+        while (mActivePlayers.size() > mMaxPlayers) {
+            MediaPlayer player = evictLeastRecentlyUsed();
+            if (player == null) {
+                // The remaining players are playing; they are released when given back
+                break;
+            }
+
+            releaseOrKeep(player);
+        }
+        trimIdlePlayers();
+    }
+
+    /**
+     * Sets the maximum number of players kept prepared for media that no owner has taken yet
+     *
+     * @param budget
+     *            The number of players, or 0 to disable prefetching
+     */
+    public void setPrefetchBudget(int budget) {
+        mPrefetchBudget = Math.max(0, budget);
+
+        while (mPrefetchedPlayers.size() > mPrefetchBudget) {
+            discardLeastRecentlyPrefetched();
+        }
+    }
+
+    /**
+     * Starts preparing a player for the given media location, so an owner can later take it with takePrefetched().
+     * Nothing happens if the location is already prefetched, or if there is no player to spare: prefetching never
+     * evicts a player that is in use.
+     *
+     * @param location
+     *            The media location, as passed to MediaPlayer.setDataSource()
+     */
+    public void prefetch(String location) {
+        if (mPrefetchBudget == 0 || mPrefetchedPlayers.containsKey(location)) {
+            return;
+        }
+
+        if (mPrefetchedPlayers.size() >= mPrefetchBudget) {
+            discardLeastRecentlyPrefetched();
+        }
+
+        if (mIdlePlayers.isEmpty() && mActivePlayers.size() >= mMaxPlayers) {
+            return;
+        }
+
+        MediaPlayer player = acquire(mPrefetchOwner);
+        player.setOnPreparedListener(mPrefetchOwner);
+        player.setOnErrorListener(mPrefetchOwner);
+
+        try {
+            player.setDataSource(location);
+            player.prepareAsync();
+        }
+        catch (IOException e) {
+            Log.w(TAG, "Unable to prefetch " + location, e);
+            release(player);
+            return;
+        }
+
+        PrefetchedPlayer prefetched = new PrefetchedPlayer();
+        prefetched.player = player;
+        mPrefetchedPlayers.put(location, prefetched);
+    }
+
+    /**
+     * @return true if a player for the given location is prefetched and has finished preparing
+     */
+    public boolean isPrefetchedAndPrepared(String location) {
+        PrefetchedPlayer prefetched = mPrefetchedPlayers.get(location);
+
+        return prefetched != null && prefetched.prepared;
+    }
+
+    /**
+     * Takes the player prefetched for the given location, if there is one. The player is either prepared (see
+     * isPrefetchedAndPrepared()) or still preparing, in which case the new owner should set its own OnPreparedListener
+     * and OnErrorListener.
+     *
+     * @param location
+     * @param owner
+     * @return The player, or null if the location isn't prefetched
+     */
+    public MediaPlayer takePrefetched(String location, Owner owner) {
+        PrefetchedPlayer prefetched = mPrefetchedPlayers.remove(location);
+        if (prefetched == null) {
+            return null;
+        }
+
+        prefetched.player.setOnPreparedListener(null);
+        prefetched.player.setOnErrorListener(null);
+        mActivePlayers.put(prefetched.player, owner);
+
+        return prefetched.player;
+    }
+
+    /**
+     * Gives back a player that has prepared the given location. If the prefetch budget allows, the player stays
+     * prepared, so the next owner that plays the same location can take it with takePrefetched(); otherwise it is
+     * released as with release(MediaPlayer).
+     *
+     * @param player
+     *            The player, which must be prepared (and not playing)
+     * @param location
+     *            The media location the player has prepared
+     */
+    public void release(MediaPlayer player, String location) {
+        if (location == null || mPrefetchBudget == 0 || !mActivePlayers.containsKey(player)) {
+            release(player);
+            return;
+        }
+
+        PrefetchedPlayer existing = mPrefetchedPlayers.get(location);
+        if (existing != null) {
+            // The location is already prefetched; keep that player
+            release(player);
+            return;
+        }
+
+        if (mPrefetchedPlayers.size() >= mPrefetchBudget) {
+            discardLeastRecentlyPrefetched();
+        }
+
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnErrorListener(mPrefetchOwner);
+        player.seekTo(0);
+        mActivePlayers.put(player, mPrefetchOwner);
+
+        PrefetchedPlayer prefetched = new PrefetchedPlayer();
+        prefetched.player = player;
+        prefetched.prepared = true;
+        mPrefetchedPlayers.put(location, prefetched);
+    }
+
+    private void discardLeastRecentlyPrefetched() {
+        Iterator<PrefetchedPlayer> iterator = mPrefetchedPlayers.values().iterator();
+        MediaPlayer player = iterator.next().player;
+        iterator.remove();
+
+        release(player);
+    }
+
+    private void removePrefetched(MediaPlayer player) {
+        Iterator<PrefetchedPlayer> iterator = mPrefetchedPlayers.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().player == player) {
+                iterator.remove();
+                break;
+            }
+        }
+    }
+
+    /**
+     * Owns the prefetched players on behalf of the owners that will take them
+     */
+    private class PrefetchOwner implements Owner, MediaPlayer.OnPreparedListener, MediaPlayer.OnErrorListener {
+        @Override
+        public void onPlayerEvicted(MediaPlayer player) {
+            removePrefetched(player);
+        }
+
+        @Override
+        public void onPrepared(MediaPlayer player) {
+            for (PrefetchedPlayer prefetched : mPrefetchedPlayers.values()) {
+                if (prefetched.player == player) {
+                    prefetched.prepared = true;
+                    break;
+                }
+            }
+        }
+
+        @Override
+        public boolean onError(MediaPlayer player, int what, int extra) {
+            removePrefetched(player);
+            release(player);
+
+            return true;
+        }
+    }
+
+    /**
+     * Gets a player in the idle state for the given owner, reusing an idle player or evicting the least recently used
+     * one that isn't playing if possible. If all the players are playing, a new one is created over the maximum.
+     *
+     * @param owner
+     * @return The player
+     */
+    public MediaPlayer acquire(Owner owner) {
+        MediaPlayer player;
+
+        if (!mIdlePlayers.isEmpty()) {
+            player = mIdlePlayers.remove(mIdlePlayers.size() - 1);
+        }
+        else {
+            player = mActivePlayers.size() >= mMaxPlayers ? evictLeastRecentlyUsed() : null;
+            if (player == null) {
+                player = new MediaPlayer();
+            }
+        }
+
+        mActivePlayers.put(player, owner);
+
+        return player;
+    }
+
+    /**
+     * Marks the given player as recently used (e.g. when it starts playing), so it is evicted after other players
+     *
+     * @param player
+     */
+    public void touch(MediaPlayer player) {
+        mActivePlayers.get(player);
+    }
+
+    /**
+     * Gives a player back to the pool. It is reset, and kept for reuse if the pool has room for it.
+     *
+     * @param player
+     */
+    public void release(MediaPlayer player) {
+        if (mActivePlayers.remove(player) != null) {
+            resetPlayer(player);
+            releaseOrKeep(player);
+        }
+    }
+
+    /**
+     * Takes the least recently used player that isn't playing from its owner
+     *
+     * @return The player, reset to the idle state, or null if every player in use is playing
+     */
+    private MediaPlayer evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<MediaPlayer, Owner>> iterator = mActivePlayers.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<MediaPlayer, Owner> entry = iterator.next();
+            MediaPlayer player = entry.getKey();
+            if (isPlaying(player)) {
+                continue;
+            }
+
+            iterator.remove();
+            entry.getValue().onPlayerEvicted(player);
+            resetPlayer(player);
+
+            return player;
+        }
+
+        return null;
+    }
+
+    private static boolean isPlaying(MediaPlayer player) {
+        try {
+            return player.isPlaying();
+        }
+        catch (IllegalStateException e) {
+            // Thrown in the error state, in which the player isn't playing
+            return false;
+        }
+    }
+
+    private void releaseOrKeep(MediaPlayer player) {
+        if (mActivePlayers.size() + mIdlePlayers.size() < mMaxPlayers) {
+            mIdlePlayers.add(player);
+        }
+        else {
+            player.release();
+        }
+    }
+
+    private void trimIdlePlayers() {
+        while (!mIdlePlayers.isEmpty() && mActivePlayers.size() + mIdlePlayers.size() > mMaxPlayers) {
+            mIdlePlayers.remove(mIdlePlayers.size() - 1).release();
+        }
+    }
+
+    private static void resetPlayer(MediaPlayer player) {
+        // Don't keep the previous owner reachable through its listeners
+        player.setOnPreparedListener(null);
+        player.setOnCompletionListener(null);
+        player.setOnErrorListener(null);
+        player.reset();
+    }
+}
@@ -1,18 +1,23 @@
 package in.uncod.android.media.widget;
 
+import in.uncod.android.util.threading.TaskExecutors;
+import in.uncod.android.util.threading.TaskWithResultListener;
+
 import java.io.File;
+import java.util.concurrent.Executor;
 
 import android.app.Activity;
 import android.app.ProgressDialog;
 import android.content.Intent;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.support.v4.app.Fragment;
 
 /**
  * Created by IntelliJ IDEA. User: ddrboxman Date: 4/4/12 Time: 12:26 PM
  */
 public abstract class AbstractMediaPickerFragment extends Fragment {
+    private UpdateMedia mUpdateMediaTask;
+
     protected abstract File mediaChanged(Uri mediaUri);
 
     protected abstract String getProgressTitle();
@@ -37,12 +42,38 @@ public abstract class AbstractMediaPickerFragment extends Fragment {
         }
     }
 
-    public class UpdateMedia extends AsyncTask<Uri, Object, File> {
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+
+        // Don't deliver results to a fragment that is going away
+        if (mUpdateMediaTask != null) {
+            mUpdateMediaTask.cancel(false);
+            mUpdateMediaTask = null;
+        }
+    }
+
+    public class UpdateMedia extends TaskWithResultListener<Uri, Object, File> {
 
         ProgressDialog dialog;
 
+        public UpdateMedia() {
+            super(null);
+        }
+
+        @Override
+        protected Executor getDefaultExecutor() {
+            return TaskExecutors.io();
+        }
+
         @Override
         protected void onPreExecute() {
+            // Only the most recently picked media should update the preview
+            if (mUpdateMediaTask != null) {
+                mUpdateMediaTask.cancel(false);
+            }
+            mUpdateMediaTask = this;
+
             dialog = new ProgressDialog(getActivity());
             dialog.setTitle(getProgressTitle());
             dialog.show();
@@ -63,9 +94,23 @@ public abstract class AbstractMediaPickerFragment extends Fragment {
 
         @Override
         protected void onPostExecute(File mediaFile) {
+            if (mUpdateMediaTask == this) {
+                mUpdateMediaTask = null;
+            }
+
             if (mediaFile != null) {
                 updateMediaPreview(mediaFile);
             }
+
+            dismissDialog();
+        }
+
+        @Override
+        protected void onCancelled(File mediaFile) {
+            dismissDialog();
+        }
+
+        private void dismissDialog() {
             if (dialog.isShowing()) {
                 try {
                     dialog.dismiss();
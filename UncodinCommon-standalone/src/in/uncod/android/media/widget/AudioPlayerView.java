@@ -1,10 +1,13 @@
 package in.uncod.android.media.widget;
 
+import in.uncod.android.media.MediaPlayerPool;
+
 import java.io.IOException;
 
 import android.content.Context;
 import android.media.MediaPlayer;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.Gravity;
@@ -14,23 +17,41 @@ import android.widget.ImageButton;
 import android.widget.LinearLayout;
 import android.widget.SeekBar;
 
+/**
+ * A play/pause button and seek bar for an audio file. The MediaPlayer comes from the shared MediaPlayerPool, and is
+ * given back when this view is detached from its window. If the pool takes the player away (because other views need
+ * one), or after the view has been detached, tapping play prepares the media again and resumes where it stopped.
+ * 
+ * In prefetch mode (see setPrefetchEnabled()), the view doesn't hold a player until play is tapped. Instead it asks the
+ * pool to prepare its media while it is attached, and prepared players are handed between views by media location,
+ * so playback can start without waiting for the player to prepare. The time from tapping play to starting playback is
+ * logged with the AudioPlayerView tag.
+ */
 public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPreparedListener,
         View.OnClickListener, MediaPlayer.OnCompletionListener, MediaPlayer.OnErrorListener,
-        SeekBar.OnSeekBarChangeListener {
+        SeekBar.OnSeekBarChangeListener, MediaPlayerPool.Owner {
 
     private MediaPlayer mMediaPlayer;
     private ImageButton mPlayPauseButton;
     private SeekBar mSeekBar;
     private String mMediaLocation;
     private PlayerState mPlayerState;
-    Thread playbackProgressUpdater;
+    private int mDuration; // Cached when the player is prepared
+    private boolean mStartWhenPrepared;
+    private int mResumePosition = -1; // Where playback stopped when the player was given back to the pool
+
+    private boolean mPrefetch;
+    private long mTapTime = -1;
+
+    static final long PROGRESS_UPDATE_INTERVAL = 100;
+    private static final String TAG = "AudioPlayerView";
 
     Handler mHandler = new Handler();
 
     int position = -1;
 
     enum PlayerState {
-        Playing, Paused, Preparing
+        Playing, Paused, Preparing, Released
     }
 
     public AudioPlayerView(Context context) {
@@ -71,18 +92,41 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
     public void onPrepared(MediaPlayer mediaPlayer) {
         updateButtonState(PlayerState.Paused);
 
-        if (position > 0) {
-            mMediaPlayer.start();
-            mMediaPlayer.seekTo(position);
-            updateButtonState(PlayerState.Playing);
+        // The seek bar's resolution is one millisecond
+        mDuration = mMediaPlayer.getDuration();
+        mSeekBar.setMax(mDuration);
+        mSeekBar.setProgress(0);
+
+        if (position > 0 || mStartWhenPrepared) {
+            mStartWhenPrepared = false;
+
+            if (position > 0) {
+                mMediaPlayer.seekTo(position);
+                mSeekBar.setProgress(position);
+            }
+
+            startPlayback();
         }
+    }
+
+    private void startPlayback() {
+        mMediaPlayer.start();
+
+        MediaPlayerPool.getInstance().touch(mMediaPlayer);
+        updateButtonState(PlayerState.Playing);
+        startProgressUpdates();
 
-        playbackProgressUpdater = new Thread(new ProgressUpdate());
-        playbackProgressUpdater.start();
+        if (mTapTime >= 0) {
+            Log.d(TAG, "Playback started " + (SystemClock.uptimeMillis() - mTapTime) + " ms after tapping play");
+            mTapTime = -1;
+        }
     }
 
     @Override
     public void onCompletion(MediaPlayer mediaPlayer) {
+        stopProgressUpdates();
+        mSeekBar.setProgress(mDuration);
+
         updateButtonState(PlayerState.Paused);
     }
 
@@ -96,8 +140,26 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
         switch (mPlayerState) {
             case Paused:
 
-                mMediaPlayer.start();
-                updateButtonState(PlayerState.Playing);
+                mTapTime = SystemClock.uptimeMillis();
+                startPlayback();
+
+                break;
+
+            case Released:
+
+                mTapTime = SystemClock.uptimeMillis();
+
+                // Prepare again (unless the pool has a prepared player), and resume playback where it stopped. If it
+                // never played, start from the position given with the media location.
+                if (mResumePosition >= 0) {
+                    position = mResumePosition;
+                }
+                mStartWhenPrepared = true;
+
+                if (!takePrefetchedPlayer()) {
+                    acquirePlayer();
+                    prepareMediaPlayer();
+                }
 
                 break;
 
@@ -117,13 +179,133 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
 
         this.position = position;
 
-        mMediaPlayer = new MediaPlayer();
+        if (mPrefetch) {
+            // Hand the current player (if any) back to the pool, and only prepare the new media ahead of time
+            releasePlayer();
+            mMediaLocation = location;
+            mStartWhenPrepared = false;
+            mResumePosition = -1;
+            mDuration = 0;
+            mSeekBar.setProgress(0);
+            updateButtonState(location != null ? PlayerState.Released : PlayerState.Preparing);
+
+            if (location != null && position > 0) {
+                // A position starts playback once prepared, as in the default mode
+                if (!takePrefetchedPlayer()) {
+                    acquirePlayer();
+                    prepareMediaPlayer();
+                }
+            }
+            else if (location != null && getWindowToken() != null) {
+                MediaPlayerPool.getInstance().prefetch(location);
+            }
+
+            return;
+        }
+
+        stopProgressUpdates();
+        mDuration = 0;
+        mStartWhenPrepared = false;
+        mResumePosition = -1;
+
+        if (mMediaPlayer != null) {
+            // Reuse the player this view already has
+            mMediaPlayer.reset();
+        }
+        else {
+            acquirePlayer();
+        }
+        mMediaLocation = location;
+
+        prepareMediaPlayer();
+    }
+
+    /**
+     * Enables or disables prefetch mode. This should be set before setMediaLocation() is called.
+     * 
+     * @param prefetch
+     */
+    public void setPrefetchEnabled(boolean prefetch) {
+        mPrefetch = prefetch;
+    }
+
+    /**
+     * Takes a player that the pool has prepared (or is preparing) for this view's media
+     * 
+     * @return true if there was such a player
+     */
+    private boolean takePrefetchedPlayer() {
+        if (!mPrefetch) {
+            return false;
+        }
+
+        MediaPlayerPool pool = MediaPlayerPool.getInstance();
+        boolean prepared = pool.isPrefetchedAndPrepared(mMediaLocation);
+
+        MediaPlayer player = pool.takePrefetched(mMediaLocation, this);
+        if (player == null) {
+            return false;
+        }
+
+        mMediaPlayer = player;
         mMediaPlayer.setOnPreparedListener(this);
         mMediaPlayer.setOnCompletionListener(this);
         mMediaPlayer.setOnErrorListener(this);
-        mMediaLocation = location;
 
-        prepareMediaPlayer();
+        if (prepared) {
+            onPrepared(mMediaPlayer);
+        }
+        else {
+            updateButtonState(PlayerState.Preparing);
+        }
+
+        return true;
+    }
+
+    private void acquirePlayer() {
+        mMediaPlayer = MediaPlayerPool.getInstance().acquire(this);
+        mMediaPlayer.setOnPreparedListener(this);
+        mMediaPlayer.setOnCompletionListener(this);
+        mMediaPlayer.setOnErrorListener(this);
+    }
+
+    /**
+     * Gives this view's player back to the pool, remembering the playback position
+     */
+    private void releasePlayer() {
+        if (mMediaPlayer != null) {
+            MediaPlayer player = mMediaPlayer;
+            boolean prepared = mPlayerState == PlayerState.Paused || mPlayerState == PlayerState.Playing;
+
+            pausePlaying();
+            onPlayerEvicted(player);
+
+            if (mPrefetch && prepared) {
+                // Another view showing the same media can start playing it right away
+                MediaPlayerPool.getInstance().release(player, mMediaLocation);
+            }
+            else {
+                MediaPlayerPool.getInstance().release(player);
+            }
+        }
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see in.uncod.android.media.MediaPlayerPool.Owner#onPlayerEvicted(android.media.MediaPlayer)
+     */
+    @Override
+    public void onPlayerEvicted(MediaPlayer player) {
+        stopProgressUpdates();
+
+        if (mPlayerState != PlayerState.Preparing) {
+            mResumePosition = getCurrentPosition();
+        }
+        mStartWhenPrepared = false;
+        mMediaPlayer = null;
+
+        updateButtonState(mMediaLocation != null ? PlayerState.Released : PlayerState.Preparing);
     }
 
     private void prepareMediaPlayer() {
@@ -159,6 +341,13 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
 
                         break;
 
+                    case Released:
+
+                        mPlayPauseButton.setImageResource(android.R.drawable.ic_media_play);
+                        mPlayPauseButton.setEnabled(true);
+
+                        break;
+
                     case Preparing:
 
                         mPlayPauseButton.setImageResource(android.R.drawable.ic_media_play);
@@ -170,27 +359,58 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
         });
     }
 
-    private class ProgressUpdate implements Runnable {
+    /**
+     * Updates the seek bar from the player's position, and schedules the next update while playing. Runs on the UI
+     * thread.
+     */
+    private Runnable mProgressUpdate = new Runnable() {
+        @Override
         public void run() {
-            while (mMediaPlayer != null) {
-                double percent = (double) mMediaPlayer.getCurrentPosition() / mMediaPlayer.getDuration();
-                final int progress = (int) (percent * 100.0);
-                mHandler.post(new Runnable() {
-                    public void run() {
-                        mSeekBar.setProgress(progress);
-                        mSeekBar.setMax(100);
-                    }
-                });
-                try {
-                    Thread.sleep(500);
-                }
-                catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+            if (mMediaPlayer == null || !mMediaPlayer.isPlaying()) {
+                return;
             }
+
+            mSeekBar.setProgress(mMediaPlayer.getCurrentPosition());
+            mHandler.postDelayed(this, PROGRESS_UPDATE_INTERVAL);
+        }
+    };
+
+    private void startProgressUpdates() {
+        mHandler.removeCallbacks(mProgressUpdate);
+        mHandler.post(mProgressUpdate);
+    }
+
+    private void stopProgressUpdates() {
+        mHandler.removeCallbacks(mProgressUpdate);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.view.View#onAttachedToWindow()
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        if (mPrefetch && mMediaPlayer == null && mMediaLocation != null) {
+            MediaPlayerPool.getInstance().prefetch(mMediaLocation);
         }
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.view.View#onDetachedFromWindow()
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        pausePlaying();
+        releasePlayer();
+    }
+
     @Override
     public void setEnabled(boolean enabled) {
         super.setEnabled(enabled);
@@ -209,9 +429,8 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
 
     @Override
     public void onProgressChanged(SeekBar seekBar, int i, boolean fromUser) {
-        if (fromUser && mMediaPlayer != null) {
-            int position = (int) (mMediaPlayer.getDuration() * (i / 100.0));
-            mMediaPlayer.seekTo(position);
+        if (fromUser && mMediaPlayer != null && mPlayerState != PlayerState.Preparing) {
+            mMediaPlayer.seekTo(i);
         }
     }
 
@@ -230,6 +449,7 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
     public void pausePlaying() {
         if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
             mMediaPlayer.pause();
+            stopProgressUpdates();
             updateButtonState(PlayerState.Paused);
         }
     }
@@ -238,6 +458,8 @@ public class AudioPlayerView extends LinearLayout implements MediaPlayer.OnPrepa
         if (mMediaPlayer != null && mMediaPlayer.isPlaying()) {
             mMediaPlayer.pause();
             mMediaPlayer.seekTo(0);
+            stopProgressUpdates();
+            mSeekBar.setProgress(0);
             updateButtonState(PlayerState.Paused);
         }
     }
@@ -15,8 +15,6 @@ import android.provider.MediaStore;
 import android.os.Environment;
 import android.os.Bundle;
 import android.net.Uri;
-import android.media.ExifInterface;
-import android.graphics.Bitmap;
 import android.content.Intent;
 import android.content.DialogInterface.OnCancelListener;
 import android.content.DialogInterface;
@@ -32,6 +30,7 @@ import in.uncod.android.media.widget.ImagePicker.ImagePickerListener.EditCancelC
 public class ImagePicker extends AbstractMediaPickerFragment implements OnClickListener {
     private static final int REQCODE_GET_IMAGE = 0;
     private static final int REQCODE_CAPTURE_IMAGE = 1;
+    private static final int THUMBNAIL_SIZE = 240;
 
     private ImageView mImageThumbnail;
     private ImageButton mCameraButton;
@@ -39,8 +38,6 @@ public class ImagePicker extends AbstractMediaPickerFragment implements OnClickL
     private ImageButton mEditButton;
     private ImagePickerListener mImagePickerListener;
 
-    private Bitmap bitmap = null;
-
     private File mTempDirectory;
     private static String mCurrentPhotoPath;
 
@@ -63,9 +60,8 @@ public class ImagePicker extends AbstractMediaPickerFragment implements OnClickL
         mEditButton.setEnabled(false);
 
         //If content was set before the fragments createView was called then update the content
-        if (bitmap != null) {
-            mImageThumbnail.setImageBitmap(bitmap);
-            mEditButton.setEnabled(true);
+        if (mediaFile != null) {
+            displayThumbnail();
         }
 
         if (savedInstanceState != null) {
@@ -103,17 +99,6 @@ public class ImagePicker extends AbstractMediaPickerFragment implements OnClickL
         }
     }
 
-    @Override
-    public void onPause() {
-        super.onPause();
-
-        if (bitmap != null) {
-            bitmap.recycle();
-            bitmap = null;
-            mImageThumbnail.setImageBitmap(null);
-        }
-    }
-
     @Override
     public void onClick(View v) {
         if (v == mGalleryButton) {
@@ -204,23 +189,46 @@ public class ImagePicker extends AbstractMediaPickerFragment implements OnClickL
     @Override
     public void updateMediaPreview(File mediaFile) {
         this.mediaFile = mediaFile;
-        try {
-            ExifInterface exif = new ExifInterface(mediaFile.toString());
-            int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, 0);
-            bitmap = BitmapManager.loadBitmapScaled(mediaFile, 240, orientation);
-            if (bitmap != null && mImageThumbnail != null) {
-                runOnUiThread(new Runnable() {
+
+        if (mImageThumbnail != null) {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    displayThumbnail();
+                }
+            });
+        }
+    }
+
+    /**
+     * Displays the thumbnail of the current image, which is decoded in the background unless it's already cached. The
+     * cache owns the bitmap, so it is not recycled when the fragment is paused.
+     */
+    private void displayThumbnail() {
+        if (!mediaFile.exists()) {
+            return; // BitmapManager only accepts files that exist
+        }
+
+        BitmapManager.get(getActivity()).displayBitmapScaled(mediaFile.getAbsolutePath(), mImageThumbnail,
+                THUMBNAIL_SIZE, new BitmapManager.OnBitmapLoadedListener() {
+                    @Override
+                    public void beforeImageLoaded(boolean cached) {
+                    }
+
                     @Override
-                    public void run() {
-                        mImageThumbnail.setImageBitmap(bitmap);
-                        mEditButton.setEnabled(true);
+                    public void onImageLoaded(boolean cached) {
+                        // Not necessarily called on the UI thread, and the image itself is set through a post, so
+                        // check it once that has run
+                        mImageThumbnail.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (mImageThumbnail.getDrawable() != null) {
+                                    mEditButton.setEnabled(true);
+                                }
+                            }
+                        });
                     }
                 });
-            }
-        }
-        catch (IOException e) {
-            e.printStackTrace();
-        }
     }
 
     public void setOnImageChangedListener(ImagePickerListener listener) {
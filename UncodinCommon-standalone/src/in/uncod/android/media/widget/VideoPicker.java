@@ -1,11 +1,15 @@
 package in.uncod.android.media.widget;
 
 import in.uncod.android.R;
+import in.uncod.android.graphics.VideoThumbnailManager;
+import in.uncod.android.util.threading.CancellationToken;
 
 import java.io.File;
 import java.io.IOException;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
 import android.media.AudioManager;
 import android.media.MediaPlayer;
 import android.net.Uri;
@@ -23,11 +27,15 @@ import android.widget.ImageButton;
 /**
  * A simple video picker
  * <p/>
+ * The player is prepared asynchronously, and a poster frame of the video (from VideoThumbnailManager) is shown while it
+ * prepares. Tapping the preview before the player is prepared starts playback once it is.
+ * <p/>
  * TODO Add support for cloud videos (i.e. Picasa videos via Gallery app)
  */
 public class VideoPicker extends AbstractMediaPickerFragment implements OnClickListener {
     private static final int REQCODE_GET_VIDEO = 0;
     private static final int REQCODE_CAPTURE_VIDEO = 0;
+    private static final int DEFAULT_POSTER_SIZE = 512; // Used if the preview hasn't been laid out yet
 
     private SurfaceView mVideoPreview;
     private ImageButton mSelectVideoButton;
@@ -36,6 +44,14 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
     private MediaPlayer mMediaPlayer;
     private Uri videoSource;
 
+    // Incremented whenever the player is shut down, so callbacks for an abandoned prepare are ignored
+    private int mPrepareGeneration;
+    private boolean mPrepared;
+    private boolean mStartWhenPrepared;
+
+    private File mVideoFile;
+    private CancellationToken mPosterLoad;
+
     OnVideoChangedListener mOnVideoChangedListener;
 
     private File mTempDirectory;
@@ -76,13 +92,31 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
         return layoutRoot;
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+
+        // The poster load is canceled when paused, and the player is shut down, so show the poster again
+        if (mVideoFile != null) {
+            showPosterFrame(mVideoFile);
+        }
+    }
+
     @Override
     public void onPause() {
         super.onPause();
 
+        cancelPosterLoad();
         shutdownMediaPlayer();
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+
+        cancelPosterLoad();
+    }
+
     @Override
     public void onClick(View view) {
         if (view == mSelectVideoButton) {
@@ -101,17 +135,24 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
      */
     private void toggleVideoPlaying() {
         if (mMediaPlayer != null) {
-            if (mMediaPlayer.isPlaying()) {
+            if (!mPrepared) {
+                mStartWhenPrepared = !mStartWhenPrepared;
+            }
+            else if (mMediaPlayer.isPlaying()) {
                 mMediaPlayer.pause();
                 mMediaPlayer.seekTo(0);
             }
             else if (videoSource != null) {
-                mVideoPreview.setBackgroundDrawable(null);
-                mMediaPlayer.start();
+                startPlayback();
             }
         }
     }
 
+    private void startPlayback() {
+        mVideoPreview.setBackgroundDrawable(null);
+        mMediaPlayer.start();
+    }
+
     /**
      * Publishes an intent to get a video file
      */
@@ -134,26 +175,91 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
     }
 
     /**
-     * Initializes the media player and prepares it for video playback
+     * Initializes the media player and starts preparing it (asynchronously) for video playback
      */
     private void prepareMediaPlayer() {
         if (videoSource != null && mVideoPreview.getHolder().getSurface().isValid()) {
+            final int generation = mPrepareGeneration;
+
             try {
                 mMediaPlayer = new MediaPlayer();
                 mMediaPlayer.setOnVideoSizeChangedListener(mVideoSizeListener);
+                mMediaPlayer.setOnPreparedListener(new MediaPlayer.OnPreparedListener() {
+                    @Override
+                    public void onPrepared(MediaPlayer mediaPlayer) {
+                        if (generation != mPrepareGeneration || mediaPlayer != mMediaPlayer) {
+                            return; // This player has been shut down
+                        }
+
+                        mPrepared = true;
+                        if (mStartWhenPrepared) {
+                            mStartWhenPrepared = false;
+                            startPlayback();
+                        }
+                    }
+                });
+                mMediaPlayer.setOnErrorListener(new MediaPlayer.OnErrorListener() {
+                    @Override
+                    public boolean onError(MediaPlayer mediaPlayer, int what, int extra) {
+                        if (generation != mPrepareGeneration || mediaPlayer != mMediaPlayer) {
+                            return true; // This player has been shut down
+                        }
+
+                        // The player can't be used anymore, e.g. because the prepare failed
+                        shutdownMediaPlayer();
+
+                        return true;
+                    }
+                });
                 mMediaPlayer.setAudioStreamType(AudioManager.STREAM_RING); // Use ringer volume
                 mMediaPlayer.setDataSource(getActivity(), videoSource);
                 mMediaPlayer.setDisplay(mVideoPreview.getHolder());
-                mMediaPlayer.prepare();
-
+                mMediaPlayer.prepareAsync();
             }
             catch (IOException e) {
-                // TODO Auto-generated catch block
                 e.printStackTrace();
+
+                shutdownMediaPlayer();
             }
         }
     }
 
+    /**
+     * Shows a frame of the given video, scaled to the preview, as the preview's background until playback starts
+     */
+    private void showPosterFrame(File videoFile) {
+        cancelPosterLoad();
+
+        mVideoPreview.setBackgroundDrawable(null);
+
+        int posterSize = Math.max(mVideoPreview.getWidth(), mVideoPreview.getHeight());
+        if (posterSize <= 0) {
+            posterSize = DEFAULT_POSTER_SIZE;
+        }
+
+        mPosterLoad = VideoThumbnailManager.get(getActivity()).loadThumbnail(videoFile, posterSize,
+                new VideoThumbnailManager.OnThumbnailLoadedListener() {
+                    @Override
+                    public void onThumbnailLoaded(Bitmap thumbnail) {
+                        // Don't cover the video if it's already playing
+                        if (getActivity() != null && (mMediaPlayer == null || !mMediaPlayer.isPlaying())) {
+                            setPosterFrame(thumbnail);
+                        }
+                    }
+                });
+    }
+
+    private void cancelPosterLoad() {
+        if (mPosterLoad != null) {
+            mPosterLoad.cancel();
+            mPosterLoad = null;
+        }
+    }
+
+    private void setPosterFrame(Bitmap poster) {
+        mVideoPreview.setBackgroundDrawable(new BitmapDrawable(getResources(), poster));
+    }
+
     MediaPlayer.OnVideoSizeChangedListener mVideoSizeListener = new MediaPlayer.OnVideoSizeChangedListener() {
         @Override
         public void onVideoSizeChanged(MediaPlayer mediaPlayer, int width, int height) {
@@ -176,8 +282,14 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
      * Releases resources used by the media player
      */
     private void shutdownMediaPlayer() {
+        mPrepareGeneration++;
+        mPrepared = false;
+        mStartWhenPrepared = false;
+
         if (mMediaPlayer != null) {
+            // Also cancels a prepare in progress
             mMediaPlayer.release();
+            mMediaPlayer = null;
         }
     }
 
@@ -205,8 +317,10 @@ public class VideoPicker extends AbstractMediaPickerFragment implements OnClickL
     @Override
     public void updateMediaPreview(File mediaFile) {
         videoSource = Uri.fromFile(mediaFile);
+        mVideoFile = mediaFile;
 
         shutdownMediaPlayer();
+        showPosterFrame(mediaFile);
         prepareMediaPlayer();
     }
 }
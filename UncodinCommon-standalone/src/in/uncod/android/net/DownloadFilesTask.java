@@ -1,5 +1,6 @@
 package in.uncod.android.net;
 
+import in.uncod.android.util.threading.TaskExecutors;
 import in.uncod.android.util.threading.TaskWithResultListener;
 
 import java.io.BufferedInputStream;
@@ -12,6 +13,7 @@ import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import android.util.Log;
 
@@ -19,7 +21,11 @@ import android.util.Log;
  * A task for downloading multiple files, that accepts an optional results callback.
  * 
  * Download progress is published with three values: current file index, total file count, and current file progress.
- * Subclasses can override onProgressUpdate in order to e.g. update a progress dialog.
+ * Subclasses can override onProgressUpdate in order to e.g. update a progress dialog. Progress is published for every
+ * buffer read, but conflated to at most one update per frame (see setProgressUpdateInterval()).
+ * 
+ * The task runs on TaskExecutors.io() by default. Cancelling it stops the download between reads; files that were not
+ * completely downloaded are deleted and reported as null.
  */
 public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List<File>> {
     private static final String TAG = "DownloadFilesTask";
@@ -49,6 +55,11 @@ public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List
         mOverwriteExisting = overwriteExisting;
     }
 
+    @Override
+    protected Executor getDefaultExecutor() {
+        return TaskExecutors.io();
+    }
+
     @Override
     protected List<File> doInBackground(URL... downloadUrls) {
         List<File> results = new ArrayList<File>(downloadUrls.length);
@@ -59,6 +70,12 @@ public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List
         publishProgress(currentFileIndex, downloadUrls.length, 0);
 
         for (URL url : downloadUrls) {
+            if (isCancelled()) {
+                // Report the URLs skipped after cancellation as not downloaded
+                results.add(null);
+                continue;
+            }
+
             try {
                 if (url != null) {
                     // Determine destination file
@@ -77,6 +94,13 @@ public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List
 
                         downloadFileFromUrl(url, output, currentFileIndex, downloadUrls.length);
 
+                        if (isCancelled()) {
+                            // Don't leave a partial file behind
+                            destinationFile.delete();
+                            results.add(null);
+                            continue;
+                        }
+
                         // Update progress
                         publishProgress(currentFileIndex, downloadUrls.length, 100);
                     }
@@ -98,7 +122,9 @@ public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List
     }
 
     /**
-     * Download a file from a URL, and update the total progress if possible
+     * Download a file from a URL, and update the total progress if possible. Returns early if the task is cancelled.
+     * 
+     * The output stream is closed when this method returns.
      * 
      * @param url
      *            The remote location of the file
@@ -114,30 +140,44 @@ public class DownloadFilesTask extends TaskWithResultListener<URL, Integer, List
      */
     protected void downloadFileFromUrl(URL url, OutputStream output, int currentFileIndex, int totalFileCount)
             throws IOException {
-        URLConnection connection = url.openConnection();
-        connection.connect();
+        InputStream input = null;
 
-        // Get file size
-        int fileLength = connection.getContentLength();
+        try {
+            URLConnection connection = url.openConnection();
+            connection.connect();
 
-        // Download the file
-        InputStream input = new BufferedInputStream(url.openStream());
+            // Get file size
+            int fileLength = connection.getContentLength();
 
-        byte data[] = new byte[1024];
-        float total = 0;
-        int count;
-        while ((count = input.read(data)) != -1) {
-            total += count;
+            // Download the file
+            input = new BufferedInputStream(connection.getInputStream());
 
-            output.write(data, 0, count);
-        }
+            byte data[] = new byte[1024];
+            float total = 0;
+            int count;
+            while ((count = input.read(data)) != -1) {
+                if (isCancelled())
+                    return;
+
+                total += count;
+
+                output.write(data, 0, count);
 
-        // Update progress
-        int currentDownloadPercent = (int) (100 * (total / fileLength));
-        publishProgress(currentFileIndex, totalFileCount, currentDownloadPercent);
+                // Update progress (conflated by the task, so this doesn't flood the UI thread)
+                if (fileLength > 0) {
+                    int currentDownloadPercent = (int) (100 * (total / fileLength));
+                    publishProgress(currentFileIndex, totalFileCount, currentDownloadPercent);
+                }
+            }
 
-        output.flush();
-        output.close();
-        input.close();
+            output.flush();
+        }
+        finally {
+            output.close();
+
+            if (input != null) {
+                input.close();
+            }
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,36 @@
+package in.uncod.android.util.threading;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * A flag that can be shared between the code requesting a cancellation and the code performing the work. Long-running
+ * work should poll isCanceled() (or call throwIfCanceled()) at convenient points and stop as soon as possible.
+ */
+public class CancellationToken {
+    private volatile boolean mCanceled;
+
+    /**
+     * Requests cancellation of any work observing this token
+     */
+    public void cancel() {
+        mCanceled = true;
+    }
+
+    /**
+     * @return true if cancellation has been requested
+     */
+    public boolean isCanceled() {
+        return mCanceled;
+    }
+
+    /**
+     * Throws a CancellationException if cancellation has been requested
+     * 
+     * @throws CancellationException
+     */
+    public void throwIfCanceled() throws CancellationException {
+        if (mCanceled) {
+            throw new CancellationException();
+        }
+    }
+}
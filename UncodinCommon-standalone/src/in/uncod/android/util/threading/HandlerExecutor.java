@@ -0,0 +1,48 @@
+package in.uncod.android.util.threading;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+/**
+ * A MainThreadExecutor backed by a Handler
+ */
+public class HandlerExecutor implements MainThreadExecutor {
+    private final Handler mHandler;
+
+    /**
+     * Creates an executor that posts to the main Looper
+     */
+    public HandlerExecutor() {
+        this(new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Creates an executor that posts to the given Handler
+     * 
+     * @param handler
+     */
+    public HandlerExecutor(Handler handler) {
+        mHandler = handler;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        mHandler.post(command);
+    }
+
+    @Override
+    public void executeDelayed(Runnable command, long delayMillis) {
+        mHandler.postDelayed(command, delayMillis);
+    }
+
+    @Override
+    public void cancel(Runnable command) {
+        mHandler.removeCallbacks(command);
+    }
+
+    @Override
+    public long uptimeMillis() {
+        return SystemClock.uptimeMillis();
+    }
+}
@@ -0,0 +1,99 @@
+package in.uncod.android.util.threading;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs tasks on a backing Executor, such that tasks submitted with the same key run one at a time, in submission
+ * order. Tasks with different keys may run concurrently.
+ */
+public class KeyedSerialExecutor {
+    private final Executor mExecutor;
+    private final Map<Object, LinkedList<Runnable>> mQueues = new HashMap<Object, LinkedList<Runnable>>();
+
+    /**
+     * @param executor
+     *            The Executor that will actually run the tasks
+     */
+    public KeyedSerialExecutor(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Queues a task behind any other tasks with the same key
+     * 
+     * @param key
+     *            The serialization key (must implement equals() and hashCode())
+     * @param command
+     *            The task to run
+     */
+    public void execute(Object key, Runnable command) {
+        if (key == null)
+            throw new IllegalArgumentException("key must be specified");
+
+        synchronized (mQueues) {
+            LinkedList<Runnable> queue = mQueues.get(key);
+            if (queue != null) {
+                // A task for this key is running; it will start the next one when finished
+                queue.add(command);
+                return;
+            }
+
+            mQueues.put(key, new LinkedList<Runnable>());
+        }
+
+        mExecutor.execute(new SerialRunnable(key, command));
+    }
+
+    /**
+     * Gets an Executor that submits all of its tasks with the given key
+     * 
+     * @param key
+     * @return An Executor view of this executor
+     */
+    public Executor forKey(final Object key) {
+        return new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                KeyedSerialExecutor.this.execute(key, command);
+            }
+        };
+    }
+
+    private void scheduleNext(Object key) {
+        Runnable next;
+
+        synchronized (mQueues) {
+            LinkedList<Runnable> queue = mQueues.get(key);
+            next = queue.poll();
+            if (next == null) {
+                mQueues.remove(key);
+                return;
+            }
+        }
+
+        mExecutor.execute(new SerialRunnable(key, next));
+    }
+
+    private class SerialRunnable implements Runnable {
+        private final Object mKey;
+        private final Runnable mCommand;
+
+        SerialRunnable(Object key, Runnable command) {
+            mKey = key;
+            mCommand = command;
+        }
+
+        @Override
+        public void run() {
+            try {
+                mCommand.run();
+            }
+            finally {
+                scheduleNext(mKey);
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package in.uncod.android.util.threading;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An Executor that runs tasks on the main (UI) thread, and which can also delay them. The default implementation is
+ * backed by a Handler on the main Looper (see HandlerExecutor); tests running on the JVM can supply their own
+ * implementation via TaskExecutors.setMainThreadExecutor() in order to control time and message dispatch.
+ */
+public interface MainThreadExecutor extends Executor {
+    /**
+     * Runs the given task on the main thread after the given delay
+     * 
+     * @param command
+     *            The task to run
+     * @param delayMillis
+     *            The delay in milliseconds
+     */
+    void executeDelayed(Runnable command, long delayMillis);
+
+    /**
+     * Removes any pending executions of the given task
+     * 
+     * @param command
+     */
+    void cancel(Runnable command);
+
+    /**
+     * @return The current time of this executor's clock in milliseconds, not counting deep sleep (i.e.
+     *         SystemClock.uptimeMillis())
+     */
+    long uptimeMillis();
+}
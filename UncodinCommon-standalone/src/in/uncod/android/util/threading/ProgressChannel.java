@@ -0,0 +1,158 @@
+package in.uncod.android.util.threading;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Delivers progress values from a background thread to the main thread, conflating bursts of updates.
+ * <p/>
+ * Only the most recently published value is kept, and values are delivered at most once per minimum interval (one
+ * frame by default). The number of messages posted to the main thread therefore depends on the interval, not on how
+ * often publish() is called.
+ * 
+ * @param <T>
+ *            The type of progress value
+ */
+public class ProgressChannel<T> {
+    /**
+     * The default minimum interval between deliveries, in milliseconds (about one frame at 60 fps)
+     */
+    public static final long DEFAULT_MIN_INTERVAL = 16;
+
+    /**
+     * Interface for receiving progress values on the main thread
+     */
+    public interface OnProgressListener<T> {
+        void onProgress(T value);
+    }
+
+    private final MainThreadExecutor mExecutor;
+    private final OnProgressListener<T> mListener;
+    private volatile long mMinInterval = DEFAULT_MIN_INTERVAL;
+
+    private final AtomicReference<T> mLatest = new AtomicReference<T>();
+    private final AtomicBoolean mDeliveryScheduled = new AtomicBoolean();
+    private volatile long mLastDeliveryTime;
+    private volatile boolean mClosed;
+
+    private final AtomicInteger mPublishedCount = new AtomicInteger();
+    private final AtomicInteger mDeliveredCount = new AtomicInteger();
+
+    private final Runnable mDeliverRunnable = new Runnable() {
+        @Override
+        public void run() {
+            mDeliveryScheduled.set(false);
+            deliverLatest();
+        }
+    };
+
+    /**
+     * Creates a channel that delivers through TaskExecutors.mainThread()
+     * 
+     * @param listener
+     *            Receives the conflated values on the main thread
+     */
+    public ProgressChannel(OnProgressListener<T> listener) {
+        this(TaskExecutors.mainThread(), listener);
+    }
+
+    /**
+     * Creates a channel that delivers through the given executor
+     * 
+     * @param executor
+     * @param listener
+     *            Receives the conflated values on the executor's thread
+     */
+    public ProgressChannel(MainThreadExecutor executor, OnProgressListener<T> listener) {
+        mExecutor = executor;
+        mListener = listener;
+    }
+
+    /**
+     * Sets the minimum time between deliveries. Use 0 to deliver once per main thread message (values published
+     * while a delivery is pending are still conflated).
+     * 
+     * @param minIntervalMillis
+     */
+    public void setMinInterval(long minIntervalMillis) {
+        if (minIntervalMillis < 0)
+            throw new IllegalArgumentException("minIntervalMillis must not be negative");
+
+        mMinInterval = minIntervalMillis;
+    }
+
+    /**
+     * Publishes a value. May be called from any thread. If a delivery is already pending, the value replaces the
+     * pending one.
+     * 
+     * @param value
+     *            The progress value; must not be null
+     */
+    public void publish(T value) {
+        if (value == null)
+            throw new IllegalArgumentException("value must not be null");
+
+        if (mClosed)
+            return;
+
+        mPublishedCount.incrementAndGet();
+        mLatest.set(value);
+
+        if (mDeliveryScheduled.compareAndSet(false, true)) {
+            long delay = mLastDeliveryTime + mMinInterval - mExecutor.uptimeMillis();
+
+            if (delay > 0) {
+                mExecutor.executeDelayed(mDeliverRunnable, delay);
+            }
+            else {
+                mExecutor.execute(mDeliverRunnable);
+            }
+        }
+    }
+
+    /**
+     * Immediately delivers any pending value. Must be called on the delivery thread.
+     */
+    public void flush() {
+        if (mDeliveryScheduled.compareAndSet(true, false)) {
+            mExecutor.cancel(mDeliverRunnable);
+        }
+
+        deliverLatest();
+    }
+
+    /**
+     * Stops delivering values. Any pending value is dropped.
+     */
+    public void close() {
+        mClosed = true;
+        mLatest.set(null);
+        mExecutor.cancel(mDeliverRunnable);
+    }
+
+    /**
+     * @return The number of values passed to publish()
+     */
+    public int getPublishedCount() {
+        return mPublishedCount.get();
+    }
+
+    /**
+     * @return The number of values actually delivered to the listener
+     */
+    public int getDeliveredCount() {
+        return mDeliveredCount.get();
+    }
+
+    private void deliverLatest() {
+        T value = mLatest.getAndSet(null);
+
+        if (value != null && !mClosed) {
+            mLastDeliveryTime = mExecutor.uptimeMillis();
+            mDeliveredCount.incrementAndGet();
+
+            mListener.onProgress(value);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package in.uncod.android.util.threading;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Process;
+
+/**
+ * Shared executors for background work.
+ * <p/>
+ * Use cpu() for computation (decoding, parsing), io() for work that mostly waits on the disk or network, and
+ * serial() when tasks touching the same resource (e.g. the same file) must not overlap. Results should be delivered
+ * through mainThread().
+ */
+public class TaskExecutors {
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int CPU_POOL_SIZE = Math.max(2, CPU_COUNT);
+    private static final int IO_POOL_SIZE = Math.max(4, CPU_COUNT * 2);
+
+    private static ThreadPoolExecutor sCpuExecutor;
+    private static ThreadPoolExecutor sIoExecutor;
+    private static KeyedSerialExecutor sSerialExecutor;
+    private static MainThreadExecutor sMainThreadExecutor;
+
+    private TaskExecutors() {
+    }
+
+    /**
+     * @return An Executor sized to the number of CPU cores, for computation-bound work
+     */
+    public static synchronized Executor cpu() {
+        if (sCpuExecutor == null) {
+            sCpuExecutor = createPool("cpu", CPU_POOL_SIZE);
+        }
+
+        return sCpuExecutor;
+    }
+
+    /**
+     * @return An Executor with a larger pool, for work that blocks on the disk or network
+     */
+    public static synchronized Executor io() {
+        if (sIoExecutor == null) {
+            sIoExecutor = createPool("io", IO_POOL_SIZE);
+        }
+
+        return sIoExecutor;
+    }
+
+    /**
+     * @return An executor that runs tasks with the same key one at a time (on the I/O pool)
+     */
+    public static synchronized KeyedSerialExecutor serial() {
+        if (sSerialExecutor == null) {
+            sSerialExecutor = new KeyedSerialExecutor(io());
+        }
+
+        return sSerialExecutor;
+    }
+
+    /**
+     * @return An executor that runs tasks on the main thread
+     */
+    public static synchronized MainThreadExecutor mainThread() {
+        if (sMainThreadExecutor == null) {
+            sMainThreadExecutor = new HandlerExecutor();
+        }
+
+        return sMainThreadExecutor;
+    }
+
+    /**
+     * Replaces the executor used for delivering results to the main thread. This is intended for running tasks
+     * outside of an Android runtime (i.e. unit tests with a fake main looper).
+     * 
+     * @param executor
+     *            The executor to use, or null to restore the default
+     */
+    public static synchronized void setMainThreadExecutor(MainThreadExecutor executor) {
+        sMainThreadExecutor = executor;
+    }
+
+    private static void setBackgroundPriority() {
+        try {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        }
+        catch (RuntimeException e) {
+            // Not running on Android (e.g. in a plain JVM test, where the framework methods are stubs)
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        }
+        catch (LinkageError e) {
+            Thread.currentThread().setPriority(Thread.MIN_PRIORITY);
+        }
+    }
+
+    private static ThreadPoolExecutor createPool(final String name, int size) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger(1);
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        return new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                setBackgroundPriority();
+                                runnable.run();
+                            }
+                        }, "TaskExecutors-" + name + " #" + mCount.getAndIncrement());
+                    }
+                });
+
+        return executor;
+    }
+}
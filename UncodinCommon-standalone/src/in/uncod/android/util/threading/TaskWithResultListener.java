@@ -1,12 +1,24 @@
 package in.uncod.android.util.threading;
 
-import android.os.AsyncTask;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * A task that accepts an optional results callback.
+ * <p/>
+ * This class follows the AsyncTask contract (onPreExecute(), doInBackground(), onProgressUpdate(), onPostExecute(),
+ * onCancelled()), but runs on an explicit Executor (see TaskExecutors) rather than on the platform's shared serial
+ * executor, and delivers progress and results through TaskExecutors.mainThread(). Cancellation is tracked by a
+ * CancellationToken, which doInBackground() implementations can poll or pass along to other cancellable work.
+ * <p/>
+ * Progress is delivered through a ProgressChannel: if publishProgress() is called faster than the progress update
+ * interval, only the latest values are passed to onProgressUpdate(). Any pending progress is delivered before
+ * onPostExecute().
+ * <p/>
+ * If doInBackground() throws, the task still finishes: onPostExecute() (or onCancelled()) is called with a null result,
+ * and getError() returns what was thrown.
  */
-public abstract class TaskWithResultListener<TParams, TProgress, TResult> extends
-        AsyncTask<TParams, TProgress, TResult> {
+public abstract class TaskWithResultListener<TParams, TProgress, TResult> {
     /**
      * Interface for task result listeners.
      */
@@ -20,6 +32,31 @@ public abstract class TaskWithResultListener<TParams, TProgress, TResult> extend
         public void onTaskResult(TResult result);
     }
 
+    /**
+     * Interface for task result listeners that also want to know when a task was cancelled. Implement this in addition
+     * to OnTaskResultListener.
+     */
+    public static interface OnTaskCancelledListener<TResult> {
+        /**
+         * This method will be activated instead of onTaskResult() if the task was cancelled.
+         * 
+         * @param result
+         *            The results returned by doInBackground(), if any. May be null.
+         */
+        public void onTaskCancelled(TResult result);
+    }
+
+    private OnTaskResultListener<TResult> mListener;
+    private final CancellationToken mCancellationToken = new CancellationToken();
+    private final AtomicBoolean mStarted = new AtomicBoolean();
+    private volatile boolean mFinished;
+    private volatile Throwable mError;
+
+    // Guards mWorkerThread, so cancel(true) can't interrupt a pooled thread that has moved on to another task
+    private final Object mWorkerLock = new Object();
+    private Thread mWorkerThread;
+    private final ProgressChannel<TProgress[]> mProgressChannel;
+
     /**
      * Creates a task.
      * 
@@ -28,14 +65,275 @@ public abstract class TaskWithResultListener<TParams, TProgress, TResult> extend
      */
     public TaskWithResultListener(OnTaskResultListener<TResult> listener) {
         mListener = listener;
+
+        mProgressChannel = new ProgressChannel<TProgress[]>(new ProgressChannel.OnProgressListener<TProgress[]>() {
+            @Override
+            public void onProgress(TProgress[] values) {
+                if (!mFinished && !isCancelled()) {
+                    onProgressUpdate(values);
+                }
+            }
+        });
     }
 
-    private OnTaskResultListener<TResult> mListener;
+    /**
+     * Executes this task on its default executor (see getDefaultExecutor()). Must be called from the main thread.
+     * 
+     * @param params
+     *            The parameters passed to doInBackground()
+     * @return This task
+     */
+    public final TaskWithResultListener<TParams, TProgress, TResult> execute(TParams... params) {
+        return executeOnExecutor(getDefaultExecutor(), params);
+    }
 
-    @Override
-    protected void onPostExecute(TResult result) {
-        if (mListener != null) {
-            mListener.onTaskResult(result);
+    /**
+     * Executes this task on the given executor. Must be called from the main thread.
+     * 
+     * @param executor
+     *            The Executor that will run doInBackground()
+     * @param params
+     *            The parameters passed to doInBackground()
+     * @return This task
+     */
+    public final TaskWithResultListener<TParams, TProgress, TResult> executeOnExecutor(Executor executor,
+            final TParams... params) {
+        if (!mStarted.compareAndSet(false, true))
+            throw new IllegalStateException("A task can only be executed once");
+
+        onPreExecute();
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TResult result = null;
+                Error fatalError = null;
+
+                if (!isCancelled()) {
+                    synchronized (mWorkerLock) {
+                        mWorkerThread = Thread.currentThread();
+                    }
+
+                    try {
+                        result = doInBackground(params);
+                    }
+                    catch (RuntimeException e) {
+                        e.printStackTrace();
+                        mError = e;
+                    }
+                    catch (Error e) {
+                        mError = e;
+                        fatalError = e;
+                    }
+                    finally {
+                        synchronized (mWorkerLock) {
+                            mWorkerThread = null;
+
+                            // Clear any interrupt caused by cancel(true) so it doesn't leak into the next pooled task
+                            Thread.interrupted();
+                        }
+                    }
+                }
+
+                // Always finish, so onPostExecute()/onCancelled() and the listener are called
+                postResult(result);
+
+                if (fatalError != null) {
+                    throw fatalError;
+                }
+            }
+        });
+
+        return this;
+    }
+
+    /**
+     * Gets the executor used by execute(). Subclasses whose work blocks on I/O should return TaskExecutors.io().
+     * 
+     * @return TaskExecutors.cpu() by default
+     */
+    protected Executor getDefaultExecutor() {
+        return TaskExecutors.cpu();
+    }
+
+    /**
+     * Attempts to cancel this task. If the task hasn't started yet, doInBackground() won't be called. Either way,
+     * onCancelled() will be called on the main thread instead of onPostExecute(), and the listener will be notified
+     * via OnTaskCancelledListener if it implements it.
+     * 
+     * @param mayInterruptIfRunning
+     *            If true, the thread running doInBackground() will be interrupted
+     * @return false if the task had already finished or been cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (mFinished || mCancellationToken.isCanceled())
+            return false;
+
+        mCancellationToken.cancel();
+
+        if (mayInterruptIfRunning) {
+            synchronized (mWorkerLock) {
+                if (mWorkerThread != null) {
+                    mWorkerThread.interrupt();
+                }
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return true if cancel() was called before this task finished
+     */
+    public final boolean isCancelled() {
+        return mCancellationToken.isCanceled();
+    }
+
+    /**
+     * @return The token used to track cancellation of this task
+     */
+    public final CancellationToken getCancellationToken() {
+        return mCancellationToken;
+    }
+
+    /**
+     * @return The exception or error thrown by doInBackground(), or null if it returned normally (or never ran)
+     */
+    public final Throwable getError() {
+        return mError;
+    }
+
+    /**
+     * @return true if the result (or cancellation) has been delivered on the main thread
+     */
+    public final boolean isFinished() {
+        return mFinished;
+    }
+
+    /**
+     * Replaces the result listener. Passing null detaches the current listener, e.g. when the object that started
+     * this task is being destroyed.
+     * 
+     * @param listener
+     */
+    public void setOnTaskResultListener(OnTaskResultListener<TResult> listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Sets the minimum time between calls to onProgressUpdate(). Values published in between are conflated, so only
+     * the latest ones are delivered.
+     * 
+     * @param intervalMillis
+     *            The interval in milliseconds (defaults to ProgressChannel.DEFAULT_MIN_INTERVAL, about one frame)
+     */
+    public void setProgressUpdateInterval(long intervalMillis) {
+        mProgressChannel.setMinInterval(intervalMillis);
+    }
+
+    /**
+     * @return The number of times publishProgress() has been called
+     */
+    public int getPublishedProgressCount() {
+        return mProgressChannel.getPublishedCount();
+    }
+
+    /**
+     * @return The number of times onProgressUpdate() has been called
+     */
+    public int getDeliveredProgressCount() {
+        return mProgressChannel.getDeliveredCount();
+    }
+
+    /**
+     * Publishes progress from doInBackground(). The values will be passed to onProgressUpdate() on the main thread,
+     * unless the task has been cancelled or newer values are published before they can be delivered.
+     * 
+     * @param values
+     */
+    protected final void publishProgress(TProgress... values) {
+        if (isCancelled())
+            return;
+
+        mProgressChannel.publish(values);
+    }
+
+    private void postResult(final TResult result) {
+        TaskExecutors.mainThread().execute(new Runnable() {
+            @Override
+            public void run() {
+                finish(result);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private void finish(TResult result) {
+        mFinished = true;
+
+        OnTaskResultListener<TResult> listener = mListener;
+        mListener = null; // Don't hold on to the caller any longer than necessary
+
+        if (!isCancelled()) {
+            // Make sure the final progress values are seen before the results
+            mProgressChannel.flush();
+        }
+        mProgressChannel.close();
+
+        if (isCancelled()) {
+            onCancelled(result);
+
+            if (listener instanceof OnTaskCancelledListener) {
+                ((OnTaskCancelledListener<TResult>) listener).onTaskCancelled(result);
+            }
         }
+        else {
+            onPostExecute(result);
+
+            if (listener != null) {
+                listener.onTaskResult(result);
+            }
+        }
+    }
+
+    /**
+     * Runs on the main thread before doInBackground()
+     */
+    protected void onPreExecute() {
+    }
+
+    /**
+     * Performs the work of this task on a background thread
+     * 
+     * @param params
+     *            The parameters passed to execute()
+     * @return The task results
+     */
+    protected abstract TResult doInBackground(TParams... params);
+
+    /**
+     * Runs on the main thread after publishProgress() is called
+     * 
+     * @param values
+     */
+    protected void onProgressUpdate(TProgress... values) {
+    }
+
+    /**
+     * Runs on the main thread after doInBackground() has finished, unless the task was cancelled. The result listener
+     * is activated after this method returns.
+     * 
+     * @param result
+     */
+    protected void onPostExecute(TResult result) {
+    }
+
+    /**
+     * Runs on the main thread instead of onPostExecute() if the task was cancelled
+     * 
+     * @param result
+     *            The results returned by doInBackground(), or null if it never ran
+     */
+    protected void onCancelled(TResult result) {
     }
-}
\ No newline at end of file
+}
@@ -2,22 +2,35 @@ package in.uncod.android.view;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
 import android.graphics.PixelFormat;
+import android.os.SystemClock;
+import android.util.Log;
 import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewTreeObserver;
 import android.view.WindowManager;
 import android.view.WindowManager.LayoutParams;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import com.nineoldandroids.view.ViewHelper;
+
 /**
  * This class handles the visual portion of dragging and dropping a UI element. Refer to the startDragging(),
  * stopDragging(), onTouchEvent(), and release() methods for usage.
  * 
+ * The drag container is a full-screen overlay window that stays attached (and invisible while nothing is being
+ * dragged) until release() is called, so starting a drag doesn't have to wait for the window manager to add a window.
+ * The time from the start of a drag to the first frame of the drag shadow is logged with the DragAndDropManager tag.
+ * 
  * @author cwc
  */
 public class DragAndDropManager {
+    private static final String TAG = "DragAndDropManager";
+
     protected Context mContext;
     protected WindowManager mWindowManager;
     private LayoutParams mWindowParams;
@@ -28,6 +41,47 @@ public class DragAndDropManager {
     private View mDraggedView;
     private boolean mContainerAttached;
 
+    // The drag shadow is drawn into this bitmap, which is reused by later drags of a view with the same size
+    private Bitmap mShadowBitmap;
+    private Canvas mShadowCanvas;
+
+    // The dragged position, smoothed over the move samples (including historical ones) received since the drag started
+    private static final float MOVE_SMOOTHING = 0.5f;
+    private float mSmoothedX;
+    private float mSmoothedY;
+    private float mLatestX;
+    private float mLatestY;
+    private FrameScheduler.FrameCallback mMoveFrameCallback = new FrameScheduler.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeMillis) {
+            if (!mDragging) {
+                return;
+            }
+
+            scrollDraggingImage(Math.round(mSmoothedX), Math.round(mSmoothedY));
+
+            // If the pointer has stopped short of the smoothed position, keep catching up on later frames
+            if (Math.abs(mLatestX - mSmoothedX) >= 1 || Math.abs(mLatestY - mSmoothedY) >= 1) {
+                addMoveSample(mLatestX, mLatestY);
+                FrameScheduler.getInstance().postFrameCallback(this);
+            }
+        }
+    };
+
+    private long mDragStartTime = -1;
+    private ViewTreeObserver.OnPreDrawListener mDragStartFrameListener = new ViewTreeObserver.OnPreDrawListener() {
+        @Override
+        public boolean onPreDraw() {
+            if (mDragStartTime >= 0) {
+                Log.d(TAG, "Drag shadow shown " + (SystemClock.uptimeMillis() - mDragStartTime)
+                        + " ms after drag start");
+                mDragStartTime = -1;
+            }
+
+            return true;
+        }
+    };
+
     public DragAndDropManager(Context context) {
         mContext = context;
 
@@ -35,7 +89,7 @@ public class DragAndDropManager {
     }
 
     /**
-     * Sets up the window parameters for the drag container
+     * Sets up the window parameters for the drag container and attaches it
      */
     protected void setUpDragContainer() {
         mWindowParams = new WindowManager.LayoutParams();
@@ -55,8 +109,24 @@ public class DragAndDropManager {
         mDragContainer = new FrameLayout(mContext);
         mDragContainer.setForegroundGravity(Gravity.TOP | Gravity.LEFT);
 
-        mWindowManager.addView(mDragContainer, mWindowParams);
-        mContainerAttached = true;
+        // Invisible rather than gone, so the container is laid out (its size is used to position the drag shadow)
+        mDragContainer.setVisibility(View.INVISIBLE);
+
+        mDraggingImageView = new ImageView(mContext);
+        mDraggingImageView.setScaleType(ImageView.ScaleType.CENTER);
+        mDragContainer.addView(mDraggingImageView);
+
+        attachDragContainer();
+    }
+
+    private void attachDragContainer() {
+        if (!mContainerAttached) {
+            mWindowManager.addView(mDragContainer, mWindowParams);
+            mContainerAttached = true;
+
+            // Each time the container is attached it gets a new tree observer
+            mDraggingImageView.getViewTreeObserver().addOnPreDrawListener(mDragStartFrameListener);
+        }
     }
 
     /**
@@ -72,7 +142,16 @@ public class DragAndDropManager {
         int y = (int) event.getY();
 
         if (event.getAction() == MotionEvent.ACTION_MOVE && isDragging()) {
-            scrollDraggingImage(x, y);
+            // Samples batched into this event since the last one are older than the event's own position
+            for (int i = 0; i < event.getHistorySize(); i++) {
+                addMoveSample(event.getHistoricalX(i), event.getHistoricalY(i));
+            }
+            addMoveSample(x, y);
+            mLatestX = x;
+            mLatestY = y;
+
+            // The shadow is moved once per frame, however many move events arrive
+            FrameScheduler.getInstance().postFrameCallback(mMoveFrameCallback);
 
             handled = true;
         }
@@ -80,18 +159,20 @@ public class DragAndDropManager {
         return handled;
     }
 
+    private void addMoveSample(float x, float y) {
+        mSmoothedX += (x - mSmoothedX) * MOVE_SMOOTHING;
+        mSmoothedY += (y - mSmoothedY) * MOVE_SMOOTHING;
+    }
+
     protected void startDragging(Bitmap bitmap, int x, int y) {
         mDragging = true;
-        mDragContainer.removeAllViews();
-        mDraggingImageView = new ImageView(mContext);
+        mDragStartTime = SystemClock.uptimeMillis();
+
         mDraggingImageView.setImageBitmap(bitmap);
-        mDraggingImageView.setScaleType(ImageView.ScaleType.CENTER);
-        mDragContainer.addView(mDraggingImageView);
 
-        if (!mContainerAttached) {
-            mWindowManager.addView(mDragContainer, mWindowParams);
-            mContainerAttached = true;
-        }
+        // Only attaches the container again after release()
+        attachDragContainer();
+        mDragContainer.setVisibility(View.VISIBLE);
     }
 
     /**
@@ -100,11 +181,10 @@ public class DragAndDropManager {
     public void stopDragging() {
         mDragging = false;
         mDraggedView = null;
-        if (mContainerAttached) {
-            mWindowManager.removeView(mDragContainer);
-            mContainerAttached = false;
-        }
-        mDragContainer.removeAllViews();
+        mDragStartTime = -1;
+        FrameScheduler.getInstance().removeFrameCallback(mMoveFrameCallback);
+
+        mDragContainer.setVisibility(View.INVISIBLE);
     }
 
     /**
@@ -126,34 +206,73 @@ public class DragAndDropManager {
      *            The number of pixels to subtract from the y-position of the dragged view
      */
     public void startDragging(View draggedView, MotionEvent event, int yOffset) {
-        mDraggedView = draggedView;
+        startDragging(draggedView, (int) event.getX(), (int) event.getY(), yOffset);
+    }
 
-        int x = (int) event.getX();
-        int y = (int) event.getY();
+    /**
+     * Tells this drag manager that the given child view is being dragged from the given touch position
+     * 
+     * @param draggedView
+     * @param x
+     * @param y
+     * @param yOffset
+     *            The number of pixels to subtract from the y-position of the dragged view
+     */
+    public void startDragging(View draggedView, int x, int y, int yOffset) {
+        mDraggedView = draggedView;
 
         Bitmap bitmap = createBitmapFromView(draggedView);
         startDragging(bitmap, x, y);
 
-        // Set offsets used when scrolling the ImageView
+        // Set offsets used when moving the ImageView
         mOffset[0] = x + ((mDragContainer.getWidth() / 2) - (bitmap.getWidth() / 2));
         mOffset[1] = mDragContainer.getHeight() / 2 - (draggedView.getHeight() / 2);
 
+        mSmoothedX = mLatestX = x;
+        mSmoothedY = mLatestY = y;
         scrollDraggingImage(x, y - yOffset);
     }
 
     private void scrollDraggingImage(int x, int y) {
-        if (mDraggingImageView != null) {
-            mDraggingImageView.scrollTo(-1 * (x - mOffset[0]), -1 * (y - mOffset[1]));
-        }
+        // Moving the image view (rather than scrolling its content) doesn't invalidate its layout
+        ViewHelper.setTranslationX(mDraggingImageView, x - mOffset[0]);
+        ViewHelper.setTranslationY(mDraggingImageView, y - mOffset[1]);
     }
 
+    /**
+     * Draws the given view into the drag shadow bitmap, replacing the bitmap only if its size doesn't match the view
+     */
     private Bitmap createBitmapFromView(View view) {
-        view.setDrawingCacheEnabled(true);
-        // Create a copy of the drawing cache so that it does not get recycled
-        // by the framework when the list tries to clean up memory
-        Bitmap bitmap = Bitmap.createBitmap(view.getDrawingCache());
-        view.setDrawingCacheEnabled(false);
-        return bitmap;
+        int width = Math.max(1, view.getWidth());
+        int height = Math.max(1, view.getHeight());
+
+        if (mShadowBitmap == null || mShadowBitmap.getWidth() != width || mShadowBitmap.getHeight() != height) {
+            recycleShadowBitmap();
+
+            mShadowBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mShadowCanvas = new Canvas(mShadowBitmap);
+        }
+        else {
+            mShadowBitmap.eraseColor(Color.TRANSPARENT);
+        }
+
+        // Draw the view the same way its drawing cache would be built
+        int saveCount = mShadowCanvas.save();
+        mShadowCanvas.translate(-view.getScrollX(), -view.getScrollY());
+        view.draw(mShadowCanvas);
+        mShadowCanvas.restoreToCount(saveCount);
+
+        return mShadowBitmap;
+    }
+
+    private void recycleShadowBitmap() {
+        if (mShadowBitmap != null) {
+            mDraggingImageView.setImageDrawable(null);
+
+            mShadowBitmap.recycle();
+            mShadowBitmap = null;
+            mShadowCanvas = null;
+        }
     }
 
     /**
@@ -173,15 +292,19 @@ public class DragAndDropManager {
     }
 
     /**
-     * Tears down this manager. Should be called by the host view in i.e. onDetachedFromWindow()
+     * Tears down this manager, detaching the drag container and recycling the drag shadow bitmap. Should be called by
+     * the host view in i.e. onDetachedFromWindow(). A later drag attaches the container again.
      */
     public void release() {
-        if (this.mContainerAttached) {
-            this.mDragContainer.removeAllViews();
-            if (mContainerAttached) {
-                this.mWindowManager.removeView(mDragContainer);
-                this.mContainerAttached = false;
-            }
+        mDragging = false;
+        mDraggedView = null;
+        mDragContainer.setVisibility(View.INVISIBLE);
+
+        if (mContainerAttached) {
+            mWindowManager.removeView(mDragContainer);
+            mContainerAttached = false;
         }
+
+        recycleShadowBitmap();
     }
 }
@@ -2,11 +2,14 @@ package in.uncod.android.view;
 
 import in.uncod.android.R;
 import android.content.Context;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
 import android.os.Vibrator;
 import android.view.Gravity;
 import android.view.MotionEvent;
+import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
@@ -17,6 +20,9 @@ import android.widget.ImageView;
  * onTouchEvent() method, and it will track whether the user has dragged something onto the hotspot, allowing another
  * object to check whether the item should be deleted.
  * 
+ * Like the drag container, the hotspot's window is attached the first time it is shown and then only hidden, until
+ * release() is called.
+ * 
  * @author cwc
  */
 public class DragToDeleteManager extends DragAndDropManager {
@@ -29,12 +35,28 @@ public class DragToDeleteManager extends DragAndDropManager {
     private boolean mAllowDelete = true;
     private WindowManager.LayoutParams mTrashWindowParams;
 
+    // Resolved once, since the hotspot switches between them while dragging
+    private int mTrashNormalColor;
+    private int mTrashActiveColor;
+    private Drawable mTrashNormalDrawable;
+    private Drawable mTrashActiveDrawable;
+
     public DragToDeleteManager(Context context) {
         super(context);
 
         mVibrator = (Vibrator) mContext.getSystemService(Context.VIBRATOR_SERVICE);
         mTrashContainer = new FrameLayout(mContext);
 
+        Resources resources = mContext.getResources();
+        mTrashNormalColor = resources.getColor(R.color.trans_grey);
+        mTrashActiveColor = resources.getColor(R.color.red);
+        mTrashNormalDrawable = resources.getDrawable(R.drawable.ic_launcher_trashcan_normal_holo);
+        mTrashActiveDrawable = resources.getDrawable(R.drawable.ic_launcher_trashcan_active_holo);
+
+        mTrashImageView = new ImageView(mContext);
+        mTrashImageView.setPadding(10, 0, 10, 0);
+        mTrashContainer.addView(mTrashImageView);
+
         // Set up layout params for the trash container
         mTrashWindowParams = new WindowManager.LayoutParams();
         mTrashWindowParams.gravity = Gravity.TOP | Gravity.LEFT;
@@ -57,30 +79,33 @@ public class DragToDeleteManager extends DragAndDropManager {
     private void setDeleteHotspotVisible(boolean dragging) {
         mTrashVisible = dragging;
 
-        mTrashContainer.removeAllViews();
-
         if (mTrashVisible && mAllowDelete) {
             if (!mTrashContainerAttached) {
                 mTrashContainerAttached = true;
                 mWindowManager.addView(mTrashContainer, mTrashWindowParams);
             }
 
-            if (mTrashImageView == null) {
-                mTrashImageView = new ImageView(mContext);
-                mTrashImageView.setBackgroundColor(mContext.getResources().getColor(R.color.trans_grey));
-                mTrashImageView.setPadding(10, 0, 10, 0);
-            }
-
-            mTrashImageView.setImageResource(R.drawable.ic_launcher_trashcan_normal_holo);
-            mTrashContainer.addView(mTrashImageView);
+            setHoveringOverTrash(false);
+            mTrashContainer.setVisibility(View.VISIBLE);
         }
         else {
             mHoveringOverTrash = false;
 
-            if (mTrashContainerAttached) {
-                mTrashContainerAttached = false;
-                mWindowManager.removeView(mTrashContainer);
-            }
+            // Invisible rather than gone, so the hotspot keeps its bounds
+            mTrashContainer.setVisibility(View.INVISIBLE);
+        }
+    }
+
+    private void setHoveringOverTrash(boolean hovering) {
+        mHoveringOverTrash = hovering;
+
+        if (hovering) {
+            mTrashImageView.setBackgroundColor(mTrashActiveColor);
+            mTrashImageView.setImageDrawable(mTrashActiveDrawable);
+        }
+        else {
+            mTrashImageView.setBackgroundColor(mTrashNormalColor);
+            mTrashImageView.setImageDrawable(mTrashNormalDrawable);
         }
     }
 
@@ -104,16 +129,13 @@ public class DragToDeleteManager extends DragAndDropManager {
         if (mTrashVisible && mAllowDelete) { // User is dragging something
             int x = (int) event.getX();
 
+            // Only update the hotspot when the hover state flips
             if (x < mTrashContainer.getRight() && !mHoveringOverTrash) {
-                mHoveringOverTrash = true;
-                mTrashImageView.setBackgroundColor(mContext.getResources().getColor(R.color.red));
-                mTrashImageView.setImageResource(R.drawable.ic_launcher_trashcan_active_holo);
+                setHoveringOverTrash(true);
                 mVibrator.vibrate(100);
             }
-            else if (x > mTrashContainer.getRight() + 10) {
-                mHoveringOverTrash = false;
-                mTrashImageView.setBackgroundColor(mContext.getResources().getColor(R.color.trans_grey));
-                mTrashImageView.setImageResource(R.drawable.ic_launcher_trashcan_normal_holo);
+            else if (x > mTrashContainer.getRight() + 10 && mHoveringOverTrash) {
+                setHoveringOverTrash(false);
             }
         }
 
@@ -140,6 +162,21 @@ public class DragToDeleteManager extends DragAndDropManager {
         setDeleteHotspotVisible(false);
     }
 
+    /* (non-Javadoc)
+     * @see in.uncod.android.view.DragAndDropManager#release()
+     */
+    @Override
+    public void release() {
+        super.release();
+
+        mTrashVisible = false;
+        mHoveringOverTrash = false;
+        if (mTrashContainerAttached) {
+            mTrashContainerAttached = false;
+            mWindowManager.removeView(mTrashContainer);
+        }
+    }
+
     /**
      * Sets whether or not this drag manager allows deletion
      * 
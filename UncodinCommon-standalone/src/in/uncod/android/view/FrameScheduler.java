@@ -0,0 +1,167 @@
+package in.uncod.android.view;
+
+import in.uncod.android.util.threading.MainThreadExecutor;
+import in.uncod.android.util.threading.TaskExecutors;
+
+import java.util.ArrayList;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.view.Choreographer;
+
+/**
+ * Runs callbacks once on the next display frame, so work triggered by input events (which can arrive several times
+ * per frame) is done at most once per frame. On API 16+ frames come from the Choreographer; on older versions they are
+ * approximated by running callbacks on the main thread at most once every 16 ms.
+ *
+ * A FrameScheduler must only be used from the main thread. Posting a callback that is already pending has no effect.
+ */
+public abstract class FrameScheduler {
+    /**
+     * Callback run on a display frame
+     */
+    public interface FrameCallback {
+        /**
+         * @param frameTimeMillis
+         *            The time at which the frame started, in the SystemClock.uptimeMillis() time base
+         */
+        void doFrame(long frameTimeMillis);
+    }
+
+    static final long FRAME_INTERVAL_MILLIS = 16;
+
+    private static FrameScheduler sInstance;
+
+    private ArrayList<FrameCallback> mCallbacks = new ArrayList<FrameCallback>();
+    private ArrayList<FrameCallback> mRunningCallbacks = new ArrayList<FrameCallback>();
+    private boolean mFrameScheduled;
+
+    /**
+     * @return The FrameScheduler shared by the main thread
+     */
+    public static FrameScheduler getInstance() {
+        if (sInstance == null) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                sInstance = new ChoreographerFrameScheduler();
+            }
+            else {
+                sInstance = new ExecutorFrameScheduler(TaskExecutors.mainThread());
+            }
+        }
+
+        return sInstance;
+    }
+
+    /**
+     * Runs the given callback once, on the next frame
+     */
+    public void postFrameCallback(FrameCallback callback) {
+        if (!mCallbacks.contains(callback)) {
+            mCallbacks.add(callback);
+        }
+
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            scheduleFrame();
+        }
+    }
+
+    /**
+     * Removes the given callback if it is pending, including when the current frame hasn't reached it yet
+     */
+    public void removeFrameCallback(FrameCallback callback) {
+        mCallbacks.remove(callback);
+
+        // Clear rather than remove the entry, so the dispatch loop's indices stay valid
+        int runningIndex = mRunningCallbacks.indexOf(callback);
+        if (runningIndex >= 0) {
+            mRunningCallbacks.set(runningIndex, null);
+        }
+
+        if (mCallbacks.isEmpty() && mFrameScheduled) {
+            mFrameScheduled = false;
+            cancelFrame();
+        }
+    }
+
+    /**
+     * Runs the pending callbacks. Callbacks posted while they run are run on the following frame.
+     */
+    protected void dispatchFrame(long frameTimeMillis) {
+        mFrameScheduled = false;
+
+        ArrayList<FrameCallback> callbacks = mCallbacks;
+        mCallbacks = mRunningCallbacks;
+        mRunningCallbacks = callbacks;
+
+        for (int i = 0; i < callbacks.size(); i++) {
+            FrameCallback callback = callbacks.get(i);
+            if (callback != null) {
+                callback.doFrame(frameTimeMillis);
+            }
+        }
+
+        callbacks.clear();
+    }
+
+    /**
+     * Arranges for dispatchFrame() to be called on the next frame
+     */
+    protected abstract void scheduleFrame();
+
+    /**
+     * Cancels a frame requested by scheduleFrame()
+     */
+    protected abstract void cancelFrame();
+
+    @SuppressLint("NewApi")
+    private static class ChoreographerFrameScheduler extends FrameScheduler {
+        private Choreographer mChoreographer = Choreographer.getInstance();
+
+        private Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                dispatchFrame(frameTimeNanos / 1000000);
+            }
+        };
+
+        @Override
+        protected void scheduleFrame() {
+            mChoreographer.postFrameCallback(mFrameCallback);
+        }
+
+        @Override
+        protected void cancelFrame() {
+            mChoreographer.removeFrameCallback(mFrameCallback);
+        }
+    }
+
+    private static class ExecutorFrameScheduler extends FrameScheduler {
+        private MainThreadExecutor mExecutor;
+        private long mLastFrameTime = -FRAME_INTERVAL_MILLIS;
+
+        private Runnable mFrameRunnable = new Runnable() {
+            @Override
+            public void run() {
+                mLastFrameTime = mExecutor.uptimeMillis();
+                dispatchFrame(mLastFrameTime);
+            }
+        };
+
+        ExecutorFrameScheduler(MainThreadExecutor executor) {
+            mExecutor = executor;
+        }
+
+        @Override
+        protected void scheduleFrame() {
+            // Keep frames at least one interval apart, but don't wait if the last one was a while ago
+            long delay = mLastFrameTime + FRAME_INTERVAL_MILLIS - mExecutor.uptimeMillis();
+            mExecutor.executeDelayed(mFrameRunnable, Math.max(0, delay));
+        }
+
+        @Override
+        protected void cancelFrame() {
+            mExecutor.cancel(mFrameRunnable);
+        }
+    }
+}
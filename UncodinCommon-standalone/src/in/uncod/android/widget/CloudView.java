@@ -3,22 +3,46 @@ package in.uncod.android.widget;
 import in.uncod.android.view.DragToDeleteManager;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import android.content.Context;
 import android.database.DataSetObserver;
+import android.graphics.Rect;
 import android.util.AttributeSet;
+import android.util.SparseArray;
 import android.view.MotionEvent;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.Adapter;
 import android.widget.AdapterView;
 
+import com.nineoldandroids.view.ViewHelper;
+
+import static com.nineoldandroids.view.ViewPropertyAnimator.animate;
+
 /**
  * This view displays children from an adapter in a horizontal flow (wrapping to a new row when a child would go past
  * the right edge of this view). It also supports deletion of child items from within the view via drag-to-delete (the 
  * owner of the data source should register as a deletion listener, so the view can notify it when the user has 
  * requested a deletion).
  * 
+ * Only the children that intersect the visible part of this view (e.g. when it is inside a ScrollView) are attached.
+ * The flow layout is computed from the measured size of every item, but measuring reuses a single view per view type,
+ * and children that scroll out of view are recycled through a scrap heap and passed back to the adapter as
+ * convertView.
+ * 
+ * If the adapter has stable IDs, data set changes are applied incrementally: items whose IDs were already present
+ * keep their measured size and their attached view (so an item with the same ID is assumed to look the same; call
+ * notifyDataSetInvalidated() on the adapter to force every item to be rebound), the flow layout is recomputed from the
+ * first row that changed, and items that moved are animated to their new positions.
+ * 
+ * The flow layout is computed during measurement, and reused by onLayout() as long as the width allows the same row
+ * breaks. The height of this view can be wrap_content (e.g. inside a ScrollView), in which case it is the height of
+ * all rows plus padding.
+ * 
  * @author cwc
  * 
  * @param <T>
@@ -38,6 +62,38 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
     private int mDraggedPosition;
     private DataSetObserver mObserver;
 
+    // The flow layout, indexed by adapter position
+    private int[] mItemLefts = new int[0];
+    private int[] mItemTops = new int[0];
+    private int[] mItemWidths = new int[0];
+    private int[] mItemHeights = new int[0];
+    private int[] mItemViewTypes = new int[0];
+    private long[] mItemIds = new long[0];
+    private int mLayoutCount;
+    private int mLayoutWidth = -1;
+    private boolean mLayoutValid;
+
+    // The row index: the first item, top, height and width of each row
+    private int[] mRowFirstPositions = new int[0];
+    private int[] mRowTops = new int[0];
+    private int[] mRowHeights = new int[0];
+    private int[] mRowWidths = new int[0];
+    private int mRowCount;
+    private int mContentWidth;
+
+    // Used as the available width when this view's width is unconstrained; every item goes on one row
+    private static final int UNBOUNDED_WIDTH = Integer.MAX_VALUE;
+
+    // Attached children, keyed by adapter position
+    private SparseArray<View> mActiveViews = new SparseArray<View>();
+
+    // Detached children available for reuse, and the views used for measuring, indexed by view type
+    private ArrayList<View>[] mScrapViews;
+    private View[] mMeasureViews;
+
+    private Rect mVisibleRect = new Rect();
+    private ViewTreeObserver.OnScrollChangedListener mScrollChangedListener;
+
     public CloudView(Context context) {
         super(context);
 
@@ -60,16 +116,66 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
             public void onChanged() {
                 super.onChanged();
 
+                if (mLayoutValid && mAdapter.hasStableIds()) {
+                    applyDataSetChange();
+                }
+                else {
+                    refreshView();
+                }
+            }
+
+            @Override
+            public void onInvalidated() {
+                super.onInvalidated();
+
                 refreshView();
             }
         };
+
+        // Attach and detach children as a scrolling parent moves this view
+        mScrollChangedListener = new ViewTreeObserver.OnScrollChangedListener() {
+            @Override
+            public void onScrollChanged() {
+                if (mLayoutValid) {
+                    fillVisibleChildren();
+                }
+            }
+        };
     }
 
     private void refreshView() {
-        removeAllViewsInLayout();
+        recycleAllChildren();
+        mLayoutValid = false;
         requestLayout();
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.view.View#onAttachedToWindow()
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+
+        getViewTreeObserver().addOnScrollChangedListener(mScrollChangedListener);
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.widget.AdapterView#onDetachedFromWindow()
+     */
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+
+        getViewTreeObserver().removeOnScrollChangedListener(mScrollChangedListener);
+
+        // Tell the drag manager to clean itself up, since this view is no longer visible
+        mDeletionManager.release();
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -94,9 +200,24 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
         mAdapter = adapter;
         mAdapter.registerDataSetObserver(mObserver);
 
+        // Views from the old adapter can't be reused
+        removeAllViewsInLayout();
+        mActiveViews.clear();
+        createScrapHeap(mAdapter.getViewTypeCount());
+
         refreshView();
     }
 
+    @SuppressWarnings("unchecked")
+    private void createScrapHeap(int viewTypeCount) {
+        mScrapViews = new ArrayList[viewTypeCount];
+        for (int i = 0; i < viewTypeCount; i++) {
+            mScrapViews[i] = new ArrayList<View>();
+        }
+
+        mMeasureViews = new View[viewTypeCount];
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -122,6 +243,37 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
         mSelectedViewPosition = position;
     }
 
+    /*
+     * (non-Javadoc)
+     * 
+     * @see android.view.View#onMeasure(int, int)
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int verticalPadding = getPaddingTop() + getPaddingBottom();
+
+        int contentWidth = 0;
+        int contentHeight = 0;
+
+        if (mAdapter != null) {
+            int availableWidth = UNBOUNDED_WIDTH;
+            if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+                availableWidth = Math.max(0, MeasureSpec.getSize(widthMeasureSpec) - horizontalPadding);
+            }
+
+            if (!isLayoutValidFor(availableWidth)) {
+                computeLayout(availableWidth);
+            }
+
+            contentWidth = mContentWidth;
+            contentHeight = getContentHeight();
+        }
+
+        setMeasuredDimension(resolveSize(contentWidth + horizontalPadding, widthMeasureSpec),
+                resolveSize(contentHeight + verticalPadding, heightMeasureSpec));
+    }
+
     /*
      * (non-Javadoc)
      * 
@@ -135,44 +287,455 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
             return;
         }
 
-        if (getChildCount() == 0) {
-            int position = 0;
-            while (position < mAdapter.getCount()) {
-                // Add each item's view to the cloud view
-                View child = mAdapter.getView(position, null, this);
-                addViewInLayout(child, -1, new LayoutParams(LayoutParams.WRAP_CONTENT,
-                        LayoutParams.WRAP_CONTENT), true);
+        // Normally the layout was already computed by onMeasure()
+        int availableWidth = Math.max(0, right - left - getPaddingLeft() - getPaddingRight());
+        if (!isLayoutValidFor(availableWidth)) {
+            computeLayout(availableWidth);
+        }
+
+        fillVisibleChildren();
+    }
+
+    /**
+     * @return true if the current layout has the same row breaks it would have if computed for the given width
+     */
+    private boolean isLayoutValidFor(int availableWidth) {
+        if (!mLayoutValid) {
+            return false;
+        }
+
+        if (availableWidth == mLayoutWidth) {
+            return true;
+        }
+
+        // Every row still fits, and no row could fit another item that it couldn't fit before
+        if (availableWidth >= mContentWidth && availableWidth <= mLayoutWidth) {
+            mLayoutWidth = availableWidth;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @return The total height of the rows
+     */
+    private int getContentHeight() {
+        if (mRowCount == 0) {
+            return 0;
+        }
+
+        return mRowTops[mRowCount - 1] + mRowHeights[mRowCount - 1];
+    }
+
+    /**
+     * Measures every item and computes its position in the flow layout
+     * 
+     * @param width
+     *            The width available to the items
+     */
+    private void computeLayout(int width) {
+        int count = mAdapter.getCount();
+        ensureLayoutCapacity(count);
+
+        for (int position = 0; position < count; position++) {
+            mItemViewTypes[position] = mAdapter.getItemViewType(position);
+            mItemIds[position] = mAdapter.getItemId(position);
+
+            View child = mActiveViews.get(position);
+            if (child == null) {
+                child = obtainMeasureView(position);
+            }
+
+            measureItem(position, child, width);
+        }
+
+        mLayoutCount = count;
+        positionItems(width, 0);
+
+        mLayoutWidth = width;
+        mLayoutValid = true;
+    }
+
+    /**
+     * Updates the layout after the adapter's data has changed, reusing the sizes and views of items whose IDs haven't
+     * changed, and only recomputing rows from the first change onward
+     */
+    private void applyDataSetChange() {
+        int oldCount = mLayoutCount;
+        long[] oldIds = mItemIds;
+        int[] oldLefts = mItemLefts;
+        int[] oldTops = mItemTops;
+        int[] oldWidths = mItemWidths;
+        int[] oldHeights = mItemHeights;
+        int[] oldViewTypes = mItemViewTypes;
+
+        Map<Long, Integer> oldPositions = new HashMap<Long, Integer>(oldCount * 2);
+        for (int position = 0; position < oldCount; position++) {
+            oldPositions.put(oldIds[position], position);
+        }
+
+        int count = mAdapter.getCount();
+        mItemLefts = new int[count];
+        mItemTops = new int[count];
+        mItemWidths = new int[count];
+        mItemHeights = new int[count];
+        mItemViewTypes = new int[count];
+        mItemIds = new long[count];
+
+        int[] newPositions = new int[oldCount];
+        for (int position = 0; position < oldCount; position++) {
+            newPositions[position] = INVALID_POSITION;
+        }
 
-                child.measure(MeasureSpec.AT_MOST | getWidth(), MeasureSpec.UNSPECIFIED);
-                position++;
+        int firstChanged = Math.min(count, oldCount);
+        for (int position = 0; position < count; position++) {
+            long id = mAdapter.getItemId(position);
+            mItemIds[position] = id;
+            mItemViewTypes[position] = mAdapter.getItemViewType(position);
+
+            Integer oldPosition = oldPositions.get(id);
+            if (oldPosition != null) {
+                // Same item as before; reuse its size
+                newPositions[oldPosition] = position;
+                mItemWidths[position] = oldWidths[oldPosition];
+                mItemHeights[position] = oldHeights[oldPosition];
+            }
+            else {
+                measureItem(position, obtainMeasureView(position), mLayoutWidth);
             }
+
+            if (position < firstChanged && (oldPosition == null || oldPosition != position)) {
+                firstChanged = position;
+            }
+        }
+
+        // Rows before the one containing the item preceding the first change are unaffected (the first changed item
+        // might now fit on that row)
+        int rowStart = 0;
+        if (firstChanged > 0) {
+            rowStart = mRowFirstPositions[getRowForPosition(firstChanged - 1)];
+
+            System.arraycopy(oldLefts, 0, mItemLefts, 0, rowStart);
+            System.arraycopy(oldTops, 0, mItemTops, 0, rowStart);
+        }
+
+        mLayoutCount = count;
+        positionItems(mLayoutWidth, rowStart);
+
+        // Move attached children to their new positions, and recycle those whose items are gone
+        SparseArray<View> oldActiveViews = mActiveViews;
+        mActiveViews = new SparseArray<View>();
+        int animationDuration = getResources().getInteger(android.R.integer.config_shortAnimTime);
+
+        for (int i = 0; i < oldActiveViews.size(); i++) {
+            int oldPosition = oldActiveViews.keyAt(i);
+            View child = oldActiveViews.valueAt(i);
+            int position = newPositions[oldPosition];
+
+            if (position == INVALID_POSITION) {
+                removeViewInLayout(child);
+                addToScrap(oldViewTypes[oldPosition], child);
+                continue;
+            }
+
+            mActiveViews.put(position, child);
+
+            int dx = oldLefts[oldPosition] - mItemLefts[position];
+            int dy = oldTops[oldPosition] - mItemTops[position];
+            if (dx != 0 || dy != 0) {
+                // Start from where the child was drawn and slide to where it will be laid out
+                ViewHelper.setTranslationX(child, ViewHelper.getTranslationX(child) + dx);
+                ViewHelper.setTranslationY(child, ViewHelper.getTranslationY(child) + dy);
+                animate(child).translationX(0).translationY(0).setDuration(animationDuration);
+            }
+        }
+
+        requestLayout();
+    }
+
+    private void ensureLayoutCapacity(int count) {
+        if (mItemLefts.length < count) {
+            mItemLefts = new int[count];
+            mItemTops = new int[count];
+            mItemWidths = new int[count];
+            mItemHeights = new int[count];
+            mItemViewTypes = new int[count];
+            mItemIds = new long[count];
+        }
+    }
+
+    private void measureItem(int position, View child, int width) {
+        int widthSpec = MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED);
+        if (width != UNBOUNDED_WIDTH) {
+            widthSpec = MeasureSpec.makeMeasureSpec(width, MeasureSpec.AT_MOST);
         }
 
-        positionItems();
+        child.measure(widthSpec, MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+
+        mItemWidths[position] = child.getMeasuredWidth();
+        mItemHeights[position] = child.getMeasuredHeight();
     }
 
     /**
-     * Positions the children
+     * Positions the items in rows, moving to a new row when an item would go past the right edge, and updates the row
+     * index
+     * 
+     * @param width
+     *            The width available to the items
+     * @param fromPosition
+     *            The first item to position. Must be the first item of a row; the positions of earlier items (and
+     *            their rows) are left as they are.
      */
-    private void positionItems() {
-        int top = 0; // Distance from top of screen
+    private void positionItems(int width, int fromPosition) {
+        int row = fromPosition > 0 ? getRowForPosition(fromPosition) : 0;
+        int top = row > 0 ? mRowTops[row] : 0; // Distance from top of the content area
         int usedWidth = 0; // The amount of horizontal space used so far
+        int rowHeight = 0; // The height of the tallest item in the current row
+        boolean rowStarted = false;
 
-        for (int index = 0; index < getChildCount(); index++) {
-            View child = getChildAt(index);
+        ensureRowCapacity(row + mLayoutCount - fromPosition);
+        mRowCount = row;
 
-            int width = child.getMeasuredWidth();
-            int height = child.getMeasuredHeight();
+        for (int position = fromPosition; position < mLayoutCount; position++) {
+            int itemWidth = mItemWidths[position];
 
             // If we can't fit this child on the current row...
-            if (usedWidth + width > getWidth()) {
+            if (usedWidth > 0 && usedWidth + itemWidth > width) {
                 // ...move down a row
-                top += height;
+                endRow(rowHeight, usedWidth);
+                top += rowHeight;
                 usedWidth = 0;
+                rowHeight = 0;
+                rowStarted = false;
+            }
+
+            if (!rowStarted) {
+                mRowFirstPositions[mRowCount] = position;
+                mRowTops[mRowCount] = top;
+                rowStarted = true;
+            }
+
+            mItemLefts[position] = usedWidth;
+            mItemTops[position] = top;
+
+            usedWidth += itemWidth;
+            rowHeight = Math.max(rowHeight, mItemHeights[position]);
+        }
+
+        if (rowStarted) {
+            endRow(rowHeight, usedWidth);
+        }
+
+        mContentWidth = 0;
+        for (int i = 0; i < mRowCount; i++) {
+            mContentWidth = Math.max(mContentWidth, mRowWidths[i]);
+        }
+    }
+
+    private void endRow(int height, int width) {
+        mRowHeights[mRowCount] = height;
+        mRowWidths[mRowCount] = width;
+        mRowCount++;
+    }
+
+    private void ensureRowCapacity(int rowCount) {
+        if (mRowTops.length < rowCount) {
+            // Rows before the first repositioned item are kept, so copy them over
+            int capacity = Math.max(rowCount, mRowTops.length * 2);
+            mRowFirstPositions = copyOf(mRowFirstPositions, capacity);
+            mRowTops = copyOf(mRowTops, capacity);
+            mRowHeights = copyOf(mRowHeights, capacity);
+            mRowWidths = copyOf(mRowWidths, capacity);
+        }
+    }
+
+    private static int[] copyOf(int[] array, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+
+        return copy;
+    }
+
+    /**
+     * @return The index of the row containing the given item
+     */
+    private int getRowForPosition(int position) {
+        int low = 0;
+        int high = mRowCount - 1;
+
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mRowFirstPositions[mid] <= position) {
+                low = mid;
+            }
+            else {
+                high = mid - 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @return The index of the first row whose bottom is below the given content coordinate, or the row count if
+     *         there is none
+     */
+    private int getFirstRowBelow(int y) {
+        int low = 0;
+        int high = mRowCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mRowTops[mid] + mRowHeights[mid] > y) {
+                high = mid;
+            }
+            else {
+                low = mid + 1;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Attaches children for the items that intersect the visible part of this view, and recycles the rest
+     */
+    private void fillVisibleChildren() {
+        if (mAdapter == null) {
+            return;
+        }
+
+        // The window is in content coordinates (i.e. relative to the top padding)
+        int windowTop;
+        int windowBottom;
+        if (getLocalVisibleRect(mVisibleRect)) {
+            // Include some of the area just outside the visible part, so small scrolls don't attach/detach children
+            int overscan = mVisibleRect.height() / 2;
+            windowTop = mVisibleRect.top - overscan - getPaddingTop();
+            windowBottom = mVisibleRect.bottom + overscan - getPaddingTop();
+        }
+        else {
+            windowTop = 0;
+            windowBottom = 0;
+        }
+
+        int count = mLayoutCount;
+
+        // Recycle children that have left the window
+        for (int i = mActiveViews.size() - 1; i >= 0; i--) {
+            int position = mActiveViews.keyAt(i);
+
+            if (position >= count || !isInWindow(position, windowTop, windowBottom)) {
+                View child = mActiveViews.valueAt(i);
+                if (child == mDeletionManager.getDraggedView()) {
+                    continue; // Keep the dragged view until the drag is over
+                }
+
+                mActiveViews.removeAt(i);
+                removeViewInLayout(child);
+                addToScrap(position < count ? mItemViewTypes[position] : -1, child);
+            }
+        }
+
+        // Attach children that have entered the window, looking only at the rows that intersect it
+        for (int row = getFirstRowBelow(windowTop); row < mRowCount && mRowTops[row] < windowBottom; row++) {
+            int firstPosition = mRowFirstPositions[row];
+            int lastPosition = row + 1 < mRowCount ? mRowFirstPositions[row + 1] - 1 : count - 1;
+
+            for (int position = firstPosition; position <= lastPosition; position++) {
+                if (!isInWindow(position, windowTop, windowBottom)) {
+                    continue;
+                }
+
+                layoutChild(position);
+            }
+        }
+
+        invalidate();
+    }
+
+    /**
+     * Attaches (if necessary) and positions the child for the given item
+     */
+    private void layoutChild(int position) {
+        View child = mActiveViews.get(position);
+        if (child == null) {
+            child = mAdapter.getView(position, getScrapView(mItemViewTypes[position]), this);
+
+            ViewGroup.LayoutParams params = child.getLayoutParams();
+            if (params == null) {
+                params = new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT);
+            }
+            addViewInLayout(child, -1, params, true);
+
+            child.measure(MeasureSpec.makeMeasureSpec(mItemWidths[position], MeasureSpec.EXACTLY),
+                    MeasureSpec.makeMeasureSpec(mItemHeights[position], MeasureSpec.EXACTLY));
+            mActiveViews.put(position, child);
+        }
+
+        int left = getPaddingLeft() + mItemLefts[position];
+        int top = getPaddingTop() + mItemTops[position];
+        child.layout(left, top, left + mItemWidths[position], top + mItemHeights[position]);
+    }
+
+    private boolean isInWindow(int position, int windowTop, int windowBottom) {
+        int top = mItemTops[position];
+
+        return top < windowBottom && top + mItemHeights[position] > windowTop;
+    }
+
+    /**
+     * Moves every attached child to the scrap heap
+     */
+    private void recycleAllChildren() {
+        for (int i = 0; i < mActiveViews.size(); i++) {
+            int position = mActiveViews.keyAt(i);
+            addToScrap(position < mLayoutCount ? mItemViewTypes[position] : -1, mActiveViews.valueAt(i));
+        }
+
+        mActiveViews.clear();
+        removeAllViewsInLayout();
+    }
+
+    private void addToScrap(int viewType, View child) {
+        if (viewType >= 0 && viewType < mScrapViews.length) {
+            // The child may have been mid-animation when it was detached
+            animate(child).cancel();
+            ViewHelper.setTranslationX(child, 0);
+            ViewHelper.setTranslationY(child, 0);
+
+            mScrapViews[viewType].add(child);
+        }
+    }
+
+    private View getScrapView(int viewType) {
+        if (viewType >= 0 && viewType < mScrapViews.length) {
+            ArrayList<View> scrap = mScrapViews[viewType];
+            if (!scrap.isEmpty()) {
+                return scrap.remove(scrap.size() - 1);
             }
+        }
 
-            child.layout(usedWidth, top, usedWidth += width, top + height);
+        return null;
+    }
+
+    /**
+     * Binds an item to the (unattached) view used for measuring items of its type
+     */
+    private View obtainMeasureView(int position) {
+        int viewType = mAdapter.getItemViewType(position);
+        if (viewType < 0 || viewType >= mMeasureViews.length) {
+            return mAdapter.getView(position, null, this);
         }
+
+        View view = mAdapter.getView(position, mMeasureViews[viewType], this);
+        if (view.getLayoutParams() == null) {
+            view.setLayoutParams(new LayoutParams(LayoutParams.WRAP_CONTENT, LayoutParams.WRAP_CONTENT));
+        }
+        mMeasureViews[viewType] = view;
+
+        return view;
     }
 
     /**
@@ -268,7 +831,7 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
         int y = (int) event.getY();
 
         int outPosition = getChildPositionAtCoords(x, y);
-        View touchedView = getChildAt(outPosition);
+        View touchedView = mActiveViews.get(outPosition);
         if (touchedView != null) {
             touchedView.setVisibility(GONE);
             mDeletionManager.startDragging(touchedView, event);
@@ -279,23 +842,47 @@ public class CloudView<T extends Adapter> extends AdapterView<T> {
         return handled;
     }
 
+    /**
+     * Finds the item at the given coordinates using the row index: a binary search on the row tops, then on the item
+     * lefts within the row
+     * 
+     * @return The position of the item, or -1 if there is no item at the coordinates
+     */
     private int getChildPositionAtCoords(int x, int y) {
-        int childPosition = -1;
+        if (!mLayoutValid) {
+            return -1;
+        }
 
-        for (int position = 0; position < mAdapter.getCount(); position++) {
-            View child = getChildAt(position);
+        // Convert to content coordinates
+        int contentX = x - getPaddingLeft();
+        int contentY = y - getPaddingTop();
+        if (contentX < 0 || contentY < 0) {
+            return -1;
+        }
 
-            if (child == null)
-                continue;
+        int row = getFirstRowBelow(contentY);
+        if (row >= mRowCount || mRowTops[row] > contentY) {
+            return -1;
+        }
 
-            // Test that coords are within child's bounding box
-            if (child.getLeft() <= x && child.getTop() <= y && child.getRight() >= x
-                    && child.getBottom() >= y) {
-                childPosition = position;
-                break;
+        // Find the last item in the row that starts at or before x
+        int low = mRowFirstPositions[row];
+        int high = (row + 1 < mRowCount ? mRowFirstPositions[row + 1] : mLayoutCount) - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (mItemLefts[mid] <= contentX) {
+                low = mid;
             }
+            else {
+                high = mid - 1;
+            }
+        }
+
+        // Items can be narrower than the remaining row width, and shorter than the row
+        if (contentX >= mItemLefts[low] + mItemWidths[low] || contentY >= mItemTops[low] + mItemHeights[low]) {
+            return -1;
         }
 
-        return childPosition;
+        return low;
     }
 }
@@ -0,0 +1,144 @@
+package in.uncod.android.widget;
+
+import in.uncod.android.Util;
+import in.uncod.android.util.threading.MainThreadExecutor;
+import in.uncod.android.util.threading.TaskExecutors;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import android.widget.ArrayAdapter;
+
+/**
+ * Adds a large collection of items to an ArrayAdapter a chunk at a time, so that the UI stays responsive. Observers of
+ * the adapter are notified once per chunk, rather than once per item.
+ * 
+ * @param <T>
+ *            The type of item in the adapter
+ */
+public class IncrementalAdapterLoader<T> {
+    /**
+     * The default number of items added per frame
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 200;
+
+    private static final long FRAME_INTERVAL = 16;
+
+    /**
+     * Interface for finding out when all items have been added
+     */
+    public interface OnLoadFinishedListener {
+        void onLoadFinished();
+    }
+
+    private final ArrayAdapter<T> mAdapter;
+    private final List<T> mItems;
+    private final int mChunkSize;
+    private final MainThreadExecutor mExecutor;
+    private OnLoadFinishedListener mListener;
+    private int mNextIndex;
+    private boolean mCanceled;
+
+    private final Runnable mAddChunkRunnable = new Runnable() {
+        @Override
+        public void run() {
+            addNextChunk();
+        }
+    };
+
+    /**
+     * Creates a loader
+     * 
+     * @param adapter
+     *            The adapter to add items to
+     * @param items
+     *            The items to add. The collection is copied, so it may be modified after this call.
+     * @param chunkSize
+     *            The maximum number of items to add per frame
+     */
+    public IncrementalAdapterLoader(ArrayAdapter<T> adapter, Collection<? extends T> items, int chunkSize) {
+        this(adapter, items, chunkSize, null);
+    }
+
+    /**
+     * Creates a loader
+     * 
+     * @param adapter
+     *            The adapter to add items to
+     * @param items
+     *            The items to add. The collection is copied, so it may be modified after this call.
+     * @param chunkSize
+     *            The maximum number of items to add per frame
+     * @param listener
+     *            If not null, notified after the last chunk has been added
+     */
+    public IncrementalAdapterLoader(ArrayAdapter<T> adapter, Collection<? extends T> items, int chunkSize,
+            OnLoadFinishedListener listener) {
+        if (adapter == null)
+            throw new IllegalArgumentException("adapter must be specified");
+
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        mAdapter = adapter;
+        mItems = new ArrayList<T>(items);
+        mChunkSize = chunkSize;
+        mListener = listener;
+        mExecutor = TaskExecutors.mainThread();
+    }
+
+    /**
+     * Sets a listener to be notified after the last chunk has been added. Must be called before start(), since the
+     * first chunk (which may be the last) is added synchronously.
+     * 
+     * @param listener
+     */
+    public void setOnLoadFinishedListener(OnLoadFinishedListener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Adds the first chunk immediately and schedules the rest. Must be called on the main thread.
+     */
+    public void start() {
+        addNextChunk();
+    }
+
+    /**
+     * Stops adding items. Items that have already been added remain in the adapter.
+     */
+    public void cancel() {
+        mCanceled = true;
+        mExecutor.cancel(mAddChunkRunnable);
+    }
+
+    /**
+     * @return true if all items have been added
+     */
+    public boolean isFinished() {
+        return mNextIndex >= mItems.size();
+    }
+
+    private void addNextChunk() {
+        if (mCanceled)
+            return;
+
+        int end = Math.min(mNextIndex + mChunkSize, mItems.size());
+
+        Util.appendToAdapter(mAdapter, mItems.subList(mNextIndex, end));
+        mNextIndex = end;
+
+        mAdapter.notifyDataSetChanged();
+
+        if (isFinished()) {
+            if (mListener != null) {
+                mListener.onLoadFinished();
+            }
+        }
+        else {
+            // Give the list a chance to draw before adding more
+            mExecutor.executeDelayed(mAddChunkRunnable, FRAME_INTERVAL);
+        }
+    }
+}
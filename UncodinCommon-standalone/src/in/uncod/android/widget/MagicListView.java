@@ -2,11 +2,11 @@ package in.uncod.android.widget;
 
 import in.uncod.android.R;
 import in.uncod.android.view.DragToDeleteManager;
+import in.uncod.android.view.FrameScheduler;
 
-import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.WeakHashMap;
 
 import android.content.Context;
 import android.content.res.TypedArray;
@@ -19,13 +19,21 @@ import android.view.View;
 import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
+import android.widget.ListAdapter;
 import android.widget.ListView;
 
 import com.globalmentor.android.content.res.Themes;
+import com.nineoldandroids.view.ViewHelper;
+
+import static com.nineoldandroids.view.ViewPropertyAnimator.animate;
 
 /**
  * This class extends ListView to allow drag-and-reorder and drag-to-delete operations
  * 
+ * If an expanding layout resource is set, the drop position is shown by expanding that view within the item under the
+ * dragged item. Otherwise the rows between the dragged item's original position and the drop position slide (using
+ * translations, so dragging doesn't cause any layout passes) to open a gap where the item would be dropped.
+ * 
  * @author cwc
  */
 public class MagicListView extends ListView {
@@ -54,7 +62,27 @@ public class MagicListView extends ListView {
         void onItemMoved(Object movedItem, Object newParent);
     }
 
+    /**
+     * This interface provides an index-based reordering callback, which saves the listener from searching the adapter
+     * for the moved item and its new parent. Adapters implementing ReorderableAdapter can apply the move directly.
+     */
+    public interface OnItemReorderListener {
+        /**
+         * Called when an item has been dragged to a new position
+         * 
+         * @param listView
+         * @param fromPosition
+         *            The item's position in the adapter before the move (not counting header views)
+         * @param toPosition
+         *            The item's position in the adapter after the move
+         * @param id
+         *            The item's ID, which is stable if the adapter has stable IDs
+         */
+        void onItemReordered(MagicListView listView, int fromPosition, int toPosition, long id);
+    }
+
     private MagicListViewListener mListListener;
+    private OnItemReorderListener mReorderListener;
     private Object mDraggingItem;
     private int mDraggingItemPos;
     private int mPreferredItemHeight;
@@ -67,20 +95,81 @@ public class MagicListView extends ListView {
     private int mExpandingLayoutResourceId = -1;
     private int mDragHandleView;
 
-    private Timer mLongPressTimer;
-    private Timer mTapTimer;
+    // A single callback, re-posted on every touch down, so pressing doesn't allocate
+    private final CheckForLongPress mCheckForLongPress = new CheckForLongPress();
+    private boolean mLongPressPending;
+    private int mLongPressPosition;
     private boolean mLongPressDrag = false;
     private int mLongPressStartX;
     private int mLongPressStartY;
 
+    // Auto-scrolling while dragging near the top or bottom of the list
+    static final float AUTO_SCROLL_MAX_SPEED = 2; // List heights per second
+    static final long AUTO_SCROLL_MAX_FRAME_TIME = 50;
+    private float mAutoScrollSpeed; // Pixels per second, negative when scrolling towards the top
+    private float mAutoScrollRemainder;
+    private long mLastAutoScrollTime = -1;
+    private int mAutoScrollX;
+    private int mAutoScrollY;
+
+    // Scrolls the list by the distance covered at the current speed since the last frame
+    private FrameScheduler.FrameCallback mAutoScrollCallback = new FrameScheduler.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeMillis) {
+            if (mAutoScrollSpeed == 0 || !mDragAndDeleteManager.isDragging()) {
+                return;
+            }
+
+            if (mLastAutoScrollTime >= 0) {
+                // Don't jump if frames were skipped (e.g. while a new row was inflated)
+                long elapsed = Math.min(frameTimeMillis - mLastAutoScrollTime, AUTO_SCROLL_MAX_FRAME_TIME);
+
+                float distance = mAutoScrollSpeed * elapsed / 1000 + mAutoScrollRemainder;
+                int pixels = (int) distance;
+                mAutoScrollRemainder = distance - pixels;
+
+                if (pixels != 0) {
+                    // A zero duration scrolls by the whole distance on the next animation step, without a relayout
+                    smoothScrollBy(pixels, 0);
+
+                    // The item under the pointer changes as the list scrolls
+                    updateDropTarget(pointToPosition(mAutoScrollX, mAutoScrollY));
+                }
+            }
+            mLastAutoScrollTime = frameTimeMillis;
+
+            FrameScheduler.getInstance().postFrameCallback(this);
+        }
+    };
+
     private View hiddenChild;
+    private Rect mDragHandleRect = new Rect();
+    private RecyclerListener mRecyclerListener;
+
+    // Not stored as keyed view tags, which below API 14 live in a static map that would leak every row. A holder keeps
+    // its row reachable (through the row's children), so entries are removed when rows are recycled, and the map is
+    // cleared when the adapter changes (which discards rows without recycling them) and when detached.
+    private WeakHashMap<View, RowHolder> mRowHolders = new WeakHashMap<View, RowHolder>();
+
+    // The drop gap, when no expanding layout resource is set
+    private boolean mDropGapActive;
+    // With an expanding layout resource, the dragged row's space is closed by translation instead, while the target
+    // row's expanding layout is shown
+    private boolean mExpandingGapActive;
+    private int mDropPosition; // With an expanding layout, the expanded row's position (or INVALID_POSITION)
+    private int mDropGapPosition = -1; // The drop position the gap was applied for
+    private int mDropGapHeight;
+    private int mDropGapFirstPosition = -1; // The first visible position the gap was applied for
+    private int mDropGapChildCount;
+    private int mDropGapAnimationDuration;
 
     int mLongPressTimeout = ViewConfiguration.getLongPressTimeout();
     int mTapTimeout = ViewConfiguration.getTapTimeout();
 
     boolean tapTimedOut = false;
 
-    List<Integer> excludedItems = new ArrayList<Integer>();
+    // Positions of items that can't be dragged by long-pressing
+    private BitSet mExcludedItems = new BitSet();
 
     public MagicListView(Context context) {
         super(context);
@@ -112,6 +201,38 @@ public class MagicListView extends ListView {
 
         mDragAndDeleteManager = new DragToDeleteManager(context);
 
+        mDropGapAnimationDuration = getResources().getInteger(android.R.integer.config_shortAnimTime);
+
+        // The adapter may rebind a recycled row with a different view hierarchy, so forget the views found in it
+        super.setRecyclerListener(new RecyclerListener() {
+            @Override
+            public void onMovedToScrapHeap(View view) {
+                // The holder references the row's children, which reference the row, so it must not outlive
+                // the row's current binding
+                RowHolder holder = mRowHolders.remove(view);
+
+                // Don't reuse the row expanded; it is expanded again if it comes back into view as the target
+                if (holder != null && holder.expandingLayout != null && holder.expandingLayout == mLastExpandedItem) {
+                    mLastExpandedItem.setVisibility(View.GONE);
+                    mLastExpandedItem = null;
+                }
+
+                // A row shifted for the drop gap would otherwise be reused off position
+                if (mDropGapActive || mExpandingGapActive || ViewHelper.getTranslationY(view) != 0) {
+                    resetDropGapTranslation(view);
+                }
+
+                if (view == hiddenChild) {
+                    hiddenChild.setVisibility(View.VISIBLE);
+                    hiddenChild = null;
+                }
+
+                if (mRecyclerListener != null) {
+                    mRecyclerListener.onMovedToScrapHeap(view);
+                }
+            }
+        });
+
         setSelector(android.R.color.transparent);
     }
 
@@ -124,6 +245,16 @@ public class MagicListView extends ListView {
         mListListener = listener;
     }
 
+    /**
+     * Sets the listener that will be told the old and new positions of reordered items. It is notified in addition to
+     * the reorder and delete listener.
+     * 
+     * @param listener
+     */
+    public void setOnItemReorderListener(OnItemReorderListener listener) {
+        mReorderListener = listener;
+    }
+
     /**
      * Sets whether this list will allow objects to deleted via dragging
      * 
@@ -133,8 +264,48 @@ public class MagicListView extends ListView {
         mDragAndDeleteManager.setDeleteAllowed(allowDelete);
     }
 
+    /**
+     * Sets the positions of items that can't be dragged by long-pressing, replacing any previous exclusions. The list
+     * is copied, so later changes to it have no effect.
+     * 
+     * @param excluded
+     *            The excluded positions, or null to clear the exclusions. Null and negative entries are ignored.
+     */
     public void setExcludedItems(List<Integer> excluded) {
-        excludedItems = excluded;
+        mExcludedItems.clear();
+
+        if (excluded != null) {
+            for (int i = 0; i < excluded.size(); i++) {
+                Integer position = excluded.get(i);
+                if (position != null && position >= 0) {
+                    mExcludedItems.set(position);
+                }
+            }
+        }
+    }
+
+    /**
+     * Excludes a range of items from being dragged by long-pressing, in addition to any existing exclusions
+     * 
+     * @param fromPosition
+     *            The first excluded position
+     * @param toPosition
+     *            The position after the last excluded position. Nothing is excluded if the range is empty, and negative
+     *            positions are ignored.
+     */
+    public void addExcludedItems(int fromPosition, int toPosition) {
+        fromPosition = Math.max(0, fromPosition);
+
+        if (toPosition > fromPosition) {
+            mExcludedItems.set(fromPosition, toPosition);
+        }
+    }
+
+    /**
+     * Removes all exclusions, so every item can be dragged
+     */
+    public void clearExcludedItems() {
+        mExcludedItems.clear();
     }
 
     /**
@@ -181,23 +352,14 @@ public class MagicListView extends ListView {
             if (mDragAndDeleteManager.isDragging()) {
                 int itemnum = MagicListView.this.pointToPosition(x, y);
 
-                handleTouchMove(y, itemnum);
+                handleTouchMove(x, y, itemnum);
 
                 handled = mDragAndDeleteManager.onTouchEvent(event);
             }
             else {
                 if (Math.abs(mLongPressStartX - x) > mTouchSlop
                         || Math.abs(mLongPressStartY - y) > mTouchSlop) {
-                    if (mTapTimer != null) {
-                        mTapTimer.cancel();
-                    }
-
-                    if (mLongPressTimer != null) {
-                        synchronized (MagicListView.this) {
-                            mLongPressTimer.cancel();
-                            mLongPressTimer = null;
-                        }
-                    }
+                    cancelPendingLongPress();
                 }
             }
         }
@@ -238,15 +400,8 @@ public class MagicListView extends ListView {
     }
 
     private void handleTouchUp(int x, int y) {
-        if (mTapTimer != null) {
-            mTapTimer.cancel();
-        }
-        if (mLongPressTimer != null) {
-            synchronized (MagicListView.this) {
-                mLongPressTimer.cancel();
-                mLongPressTimer = null;
-            }
-        }
+        cancelPendingLongPress();
+        stopAutoScroll();
 
         if (mDragAndDeleteManager.isDeleting()) {
             if (mListListener != null) {
@@ -258,110 +413,141 @@ public class MagicListView extends ListView {
             int itemnum = MagicListView.this.pointToPosition(x, y);
             Object newParent = getItemAtPosition(itemnum - 1);
 
+            if (mDropGapActive) {
+                // The item goes where the gap is: after the item at the drop position if it was moved down, before it
+                // if it was moved up
+                int parentPosition = mDropPosition > mDraggingItemPos ? mDropPosition : mDropPosition - 1;
+                newParent = getItemAtPosition(parentPosition);
+            }
+
             if (mListListener != null) {
                 mListListener.onItemMoved(mDraggingItem, newParent);
             }
+
+            if (mReorderListener != null && (mDropGapActive || itemnum != AdapterView.INVALID_POSITION)) {
+                int toPosition = mDropGapActive ? mDropPosition : getPositionAfterMove(itemnum - 1);
+                notifyItemReordered(mDraggingItemPos, toPosition);
+            }
         }
 
         // Collapse the expanded listview item, if it exists
         if (mLastExpandedItem != null) {
             mLastExpandedItem.setVisibility(View.GONE);
+            mLastExpandedItem = null;
         }
 
-        if (hiddenChild != null) {
-            ViewGroup.LayoutParams lp = hiddenChild.getLayoutParams();
-            lp.height = mPreferredItemHeight;
-            hiddenChild.setLayoutParams(lp);
-            hiddenChild.setVisibility(View.VISIBLE);
+        if (mDropGapActive || mExpandingGapActive) {
+            clearDropGap();
         }
 
         mDragAndDeleteManager.stopDragging();
     }
 
-    private void handleTouchMove(int y, int itemnum) {
-        // If the user drags an item over another item that isn't the list header or the item's original position,
-        // expand the designated child of the underlying item's view to give the user the impression of an empty area in
-        // which to drop the currently dragged item
-        if (itemnum > this.getHeaderViewsCount() - 1 && itemnum != mDraggingItemPos) {
-            // Collapse the previously expanded item
+    private void handleTouchMove(int x, int y, int itemnum) {
+        updateDropTarget(itemnum);
+        updateAutoScroll(x, y);
+    }
+
+    private void updateDropTarget(int itemnum) {
+        if (mDropGapActive) {
+            moveDropGap(itemnum);
+        }
+        else if (mExpandingGapActive) {
+            moveExpandedItem(itemnum);
+        }
+    }
+
+    /**
+     * If the user drags an item over another item that isn't the list header or the item's original position, expands
+     * the designated child of the underlying item's view to give the user the impression of an empty area in which to
+     * drop the currently dragged item. The expanding layout is only shown or hidden (which lays the list out again)
+     * when the target row changes.
+     */
+    private void moveExpandedItem(int itemnum) {
+        int target = mDropPosition;
+        if (itemnum == mDraggingItemPos) {
+            target = AdapterView.INVALID_POSITION; // Back over the dragged item's own space
+        }
+        else if (itemnum > getHeaderViewsCount() - 1) {
+            target = itemnum;
+        }
+
+        // The expanded row may have been recycled by scrolling, in which case it's expanded again when it's visible
+        if (target != mDropPosition || (target != AdapterView.INVALID_POSITION && mLastExpandedItem == null)) {
             if (mLastExpandedItem != null) {
                 mLastExpandedItem.setVisibility(View.GONE);
+                mLastExpandedItem = null;
             }
 
-            // Expand the item at the current position
-            View item = MagicListView.this.getChildAt(itemnum - MagicListView.this.getFirstVisiblePosition());
-            mLastExpandedItem = (ViewGroup) item.findViewById(mExpandingLayoutResourceId);
+            View item = target != AdapterView.INVALID_POSITION ? getChildAt(target - getFirstVisiblePosition())
+                    : null;
+            if (item != null) {
+                mLastExpandedItem = getRowHolder(item).expandingLayout;
 
-            if (mLastExpandedItem != null) {
-                mLastExpandedItem.setVisibility(View.VISIBLE);
+                if (mLastExpandedItem != null) {
+                    mLastExpandedItem.setVisibility(View.VISIBLE);
+                }
             }
-        }
 
-        // Hide the view for the currently dragged item, if it would be visible
-        if (mDraggingItemPos >= getFirstVisiblePosition() && mDraggingItemPos <= getLastVisiblePosition()) {
-            hideChildView(itemnum);
+            mDropPosition = target;
         }
 
-        // Handle scrolling of the listview while dragging
-        int listHeight = getHeight();
-        int upperBound = Math.min(y - mTouchSlop, listHeight / 3);
-        int lowerBound = Math.max(y + mTouchSlop, listHeight * 2 / 3);
-        int speed = 0;
-        if (y > lowerBound) {
-            // scroll the list up a bit
-            speed = y > (getHeight() + lowerBound) / 2 ? 16 : 4;
-        }
-        else if (y < upperBound) {
-            // scroll the list down a bit
-            speed = y < upperBound / 2 ? -16 : -4;
-        }
-        if (speed != 0) {
-            int ref = pointToPosition(0, getHeight() / 2);
-            if (ref == AdapterView.INVALID_POSITION) {
-                // we hit a divider or an invisible view, check somewhere else
-                ref = pointToPosition(0, getHeight() / 2 + getDividerHeight() + 64);
-            }
-            View v = getChildAt(ref - getFirstVisiblePosition());
-            if (v != null) {
-                int pos = v.getTop();
-                setSelectionFromTop(ref, pos - speed);
-            }
-        }
+        applyDropGap();
     }
 
-    private void hideChildView(int itemnum) {
-
-        int firstVisible = MagicListView.this.getFirstVisiblePosition();
+    /**
+     * Starts, adjusts or stops auto-scrolling based on how far into the top or bottom third of the list the user is
+     * dragging. The scroll speed is proportional to that distance.
+     */
+    private void updateAutoScroll(int x, int y) {
+        mAutoScrollX = x;
+        mAutoScrollY = y;
 
-        hiddenChild = MagicListView.this.getChildAt(mDraggingItemPos - firstVisible);
+        int listHeight = getHeight();
+        int edgeZone = listHeight / 3;
+        float depth = 0;
+        if (y > listHeight - edgeZone) {
+            // scroll the list up
+            depth = y - (listHeight - edgeZone);
+        }
+        else if (y < edgeZone) {
+            // scroll the list down
+            depth = y - edgeZone;
+        }
 
-        ViewGroup.LayoutParams lp = hiddenChild.getLayoutParams();
+        float speed = edgeZone > 0 ? Math.max(-1, Math.min(1, depth / edgeZone)) * listHeight
+                * AUTO_SCROLL_MAX_SPEED : 0;
 
-        if (itemnum == mDraggingItemPos) {
-            lp.height = mPreferredItemHeight;
+        if (speed == 0) {
+            stopAutoScroll();
         }
         else {
-            lp.height = 1;
+            if (mAutoScrollSpeed == 0) {
+                mLastAutoScrollTime = -1;
+            }
+
+            mAutoScrollSpeed = speed;
+            FrameScheduler.getInstance().postFrameCallback(mAutoScrollCallback);
         }
+    }
 
-        hiddenChild.setLayoutParams(lp);
-        hiddenChild.setVisibility(View.INVISIBLE);
-        layoutChildren();
+    private void stopAutoScroll() {
+        mAutoScrollSpeed = 0;
+        mAutoScrollRemainder = 0;
+        FrameScheduler.getInstance().removeFrameCallback(mAutoScrollCallback);
     }
 
-    private void handleTouchDown(final MotionEvent event, int x, final int itemnum) {
+    private void handleTouchDown(MotionEvent event, int x, int itemnum) {
 
         // Test that the user pressed on the drag handle for the item at these coordinates
-        final View item = MagicListView.this.getChildAt(itemnum
+        View item = MagicListView.this.getChildAt(itemnum
                 - MagicListView.this.getFirstVisiblePosition());
 
         if (!mLongPressDrag) {
-            View dragger = item.findViewById(mDragHandleView);
+            View dragger = getRowHolder(item).dragHandle;
 
             if (dragger != null) {
-                Rect r = new Rect();
-
-                dragger.getDrawingRect(r);
+                Rect r = mDragHandleRect;
 
                 mDraggingItem = getItemAtPosition(itemnum);
                 mDraggingItemPos = itemnum;
@@ -373,42 +559,247 @@ public class MagicListView extends ListView {
 
                 if ((r.left < x) && (x < r.right)) {
                     // Tell the drag manager that the user is dragging an item
-                    startDrag(event, item, itemnum);
+                    startDrag((int) event.getX(), (int) event.getY(), item, itemnum);
                 }
             }
         }
         else {
-            synchronized (MagicListView.this) {
-                // Only initiate the long-press timer if one isn't already active
-                if (mLongPressTimer == null && !excludedItems.contains(itemnum)) {
-                    mLongPressTimer = new Timer();
-                    mLongPressTimer.schedule(new TimerTask() {
-                        @Override
-                        public void run() {
-                            mHandler.post(new Runnable() {
-                                @Override
-                                public void run() {
-                                    // Task finished, so clear the timer
-                                    synchronized (MagicListView.this) {
-                                        mLongPressTimer = null;
-                                    }
-
-                                    mDraggingItem = getItemAtPosition(itemnum);
-                                    mDraggingItemPos = itemnum;
-                                    startDrag(event, item, itemnum);
-                                }
-                            });
-                        }
-                    }, mLongPressTimeout + mTapTimeout);
-                }
+            // Only initiate the long-press check if one isn't already pending
+            if (!mLongPressPending && !mExcludedItems.get(itemnum)) {
+                // The press position is in mLongPressStartX/Y
+                mLongPressPending = true;
+                mLongPressPosition = itemnum;
+                mHandler.postDelayed(mCheckForLongPress, mLongPressTimeout + mTapTimeout);
             }
         }
     }
 
-    private void startDrag(MotionEvent event, View item, int itemnum) {
+    /**
+     * @return The position the dragged item ends up at, once it has been moved to follow the item at the given position
+     */
+    private int getPositionAfterMove(int parentPosition) {
+        // Positions after the dragged item shift up by one when it is removed
+        return parentPosition < mDraggingItemPos ? parentPosition + 1 : parentPosition;
+    }
+
+    private void notifyItemReordered(int fromPosition, int toPosition) {
+        int firstItem = getHeaderViewsCount();
+        int lastItem = getCount() - getFooterViewsCount() - 1;
+        toPosition = Math.max(firstItem, Math.min(lastItem, toPosition));
+
+        if (toPosition != fromPosition) {
+            mReorderListener.onItemReordered(this, fromPosition - firstItem, toPosition - firstItem,
+                    getItemIdAtPosition(fromPosition));
+        }
+    }
+
+    /**
+     * Gets the cached views for the given row, looking them up if the row hasn't been touched since it was last
+     * recycled (or since the resource IDs changed)
+     */
+    private RowHolder getRowHolder(View row) {
+        RowHolder holder = mRowHolders.get(row);
+
+        if (holder == null || holder.dragHandleId != mDragHandleView
+                || holder.expandingLayoutId != mExpandingLayoutResourceId) {
+            holder = new RowHolder();
+            holder.dragHandleId = mDragHandleView;
+            holder.expandingLayoutId = mExpandingLayoutResourceId;
+            holder.dragHandle = row.findViewById(mDragHandleView);
+            holder.expandingLayout = (ViewGroup) row.findViewById(mExpandingLayoutResourceId);
+            mRowHolders.put(row, holder);
+        }
+
+        return holder;
+    }
+
+    /**
+     * The drag handle and expanding layout of a row, kept until the row is recycled
+     */
+    private static class RowHolder {
+        int dragHandleId;
+        int expandingLayoutId;
+        View dragHandle;
+        ViewGroup expandingLayout;
+    }
+
+    /* (non-Javadoc)
+     * @see android.widget.ListView#setAdapter(android.widget.ListAdapter)
+     */
+    @Override
+    public void setAdapter(ListAdapter adapter) {
+        super.setAdapter(adapter);
+
+        // The old rows are discarded without passing through the recycler listener
+        mRowHolders.clear();
+    }
+
+    /* (non-Javadoc)
+     * @see android.widget.AbsListView#setRecyclerListener(android.widget.AbsListView.RecyclerListener)
+     */
+    @Override
+    public void setRecyclerListener(RecyclerListener listener) {
+        // This list's own recycler listener is always installed; it passes views on to the given listener
+        mRecyclerListener = listener;
+    }
+
+    private void cancelPendingLongPress() {
+        if (mLongPressPending) {
+            mHandler.removeCallbacks(mCheckForLongPress);
+            mLongPressPending = false;
+        }
+    }
+
+    /**
+     * Starts dragging an item once the user has held it for the long-press timeout. Runs on the UI thread.
+     */
+    private class CheckForLongPress implements Runnable {
+        @Override
+        public void run() {
+            mLongPressPending = false;
+
+            // The list may have scrolled or been laid out again since the item was pressed
+            View item = getChildAt(mLongPressPosition - getFirstVisiblePosition());
+            if (item != null) {
+                mDraggingItem = getItemAtPosition(mLongPressPosition);
+                mDraggingItemPos = mLongPressPosition;
+                startDrag(mLongPressStartX, mLongPressStartY, item, mLongPressPosition);
+            }
+        }
+    }
+
+    private void startDrag(int x, int y, View item, int itemnum) {
         mDraggingItem = getItemAtPosition(itemnum);
-        hideChildView(itemnum);
-        mDragAndDeleteManager.startDragging(item, event, mPreferredItemHeight);
+
+        if (mExpandingLayoutResourceId == -1) {
+            startDropGap(item, itemnum);
+        }
+        else {
+            startExpandingGap(item);
+        }
+
+        mDragAndDeleteManager.startDragging(item, x, y, mPreferredItemHeight);
+    }
+
+    private void startDropGap(View item, int itemnum) {
+        mDropGapActive = true;
+        mDropPosition = itemnum;
+        mDropGapHeight = item.getHeight() + getDividerHeight();
+        mDropGapFirstPosition = -1;
+
+        applyDropGap();
+    }
+
+    private void startExpandingGap(View item) {
+        mExpandingGapActive = true;
+        mDropPosition = AdapterView.INVALID_POSITION;
+        mDropGapHeight = item.getHeight() + getDividerHeight();
+        mDropGapFirstPosition = -1;
+
+        applyDropGap();
+    }
+
+    /**
+     * Moves the drop gap to the given position, keeping it within the list's items (i.e. not over headers or footers)
+     */
+    private void moveDropGap(int itemnum) {
+        if (itemnum == AdapterView.INVALID_POSITION) {
+            return; // e.g. over a divider
+        }
+
+        int firstItem = getHeaderViewsCount();
+        int lastItem = getCount() - getFooterViewsCount() - 1;
+        mDropPosition = Math.max(firstItem, Math.min(lastItem, itemnum));
+
+        applyDropGap();
+    }
+
+    /**
+     * Slides the visible rows between the dragged item and the drop position by the dragged item's height (or, with an
+     * expanding layout, the rows after the dragged item), and hides the dragged item's row. Row heights are left as
+     * they are, so this doesn't require a layout pass.
+     */
+    private void applyDropGap() {
+        int firstPosition = getFirstVisiblePosition();
+        int childCount = getChildCount();
+
+        // The rows only need updating when the drop position changes or the list scrolls
+        if (mDropPosition == mDropGapPosition && firstPosition == mDropGapFirstPosition
+                && childCount == mDropGapChildCount) {
+            return;
+        }
+        mDropGapPosition = mDropPosition;
+        mDropGapFirstPosition = firstPosition;
+        mDropGapChildCount = childCount;
+
+        View draggedChild = null;
+
+        for (int i = 0; i < childCount; i++) {
+            View child = getChildAt(i);
+            int position = firstPosition + i;
+
+            if (position == mDraggingItemPos) {
+                draggedChild = child;
+            }
+
+            float offset = getDropGapOffset(position);
+            if (ViewHelper.getTranslationY(child) != offset) {
+                animate(child).translationY(offset).setDuration(mDropGapAnimationDuration);
+            }
+        }
+
+        // The dragged item's view can be recycled for another item as the list scrolls
+        if (draggedChild != hiddenChild) {
+            if (hiddenChild != null) {
+                hiddenChild.setVisibility(View.VISIBLE);
+            }
+
+            hiddenChild = draggedChild;
+
+            if (hiddenChild != null) {
+                hiddenChild.setVisibility(View.INVISIBLE);
+            }
+        }
+    }
+
+    private float getDropGapOffset(int position) {
+        if (mExpandingGapActive) {
+            // Close the dragged item's space while another row is expanded to take the drop
+            return mDropPosition != AdapterView.INVALID_POSITION && position > mDraggingItemPos ? -mDropGapHeight : 0;
+        }
+
+        if (mDropPosition > mDraggingItemPos && position > mDraggingItemPos && position <= mDropPosition) {
+            return -mDropGapHeight;
+        }
+        else if (mDropPosition < mDraggingItemPos && position >= mDropPosition && position < mDraggingItemPos) {
+            return mDropGapHeight;
+        }
+
+        return 0;
+    }
+
+    /**
+     * Puts every row back where the list laid it out. The adapter's owner applies the move (if any) when notified.
+     */
+    private void clearDropGap() {
+        mDropGapActive = false;
+        mExpandingGapActive = false;
+        mDropGapPosition = -1;
+        mDropGapFirstPosition = -1;
+
+        for (int i = 0; i < getChildCount(); i++) {
+            resetDropGapTranslation(getChildAt(i));
+        }
+
+        if (hiddenChild != null) {
+            hiddenChild.setVisibility(View.VISIBLE);
+            hiddenChild = null;
+        }
+    }
+
+    private void resetDropGapTranslation(View row) {
+        animate(row).cancel();
+        ViewHelper.setTranslationY(row, 0);
     }
 
     /* (non-Javadoc)
@@ -418,6 +809,10 @@ public class MagicListView extends ListView {
     protected void onDetachedFromWindow() {
         super.onDetachedFromWindow();
 
+        cancelPendingLongPress();
+        stopAutoScroll();
+        mRowHolders.clear();
+
         // Tell the drag manager to clean itself up, since this view is no longer visible
         this.mDragAndDeleteManager.release();
     }
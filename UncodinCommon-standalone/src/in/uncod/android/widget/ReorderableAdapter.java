@@ -0,0 +1,16 @@
+package in.uncod.android.widget;
+
+/**
+ * Implemented by adapters that can move an item to a new position in place (see MagicListView.OnItemReorderListener)
+ */
+public interface ReorderableAdapter {
+    /**
+     * Moves an item, shifting the items in between by one position, and notifies observers
+     * 
+     * @param fromPosition
+     *            The item's current position
+     * @param toPosition
+     *            The item's position after the move
+     */
+    void moveItem(int fromPosition, int toPosition);
+}
@@ -0,0 +1,61 @@
+package in.uncod.android.widget;
+
+import java.util.Collections;
+import java.util.List;
+
+import android.content.Context;
+import android.widget.ArrayAdapter;
+
+/**
+ * An ArrayAdapter that moves items in place. Only the items between the old and new positions are shifted, and
+ * observers are notified once.
+ * 
+ * The adapter works directly on the list it is given, so it must not be used with filtering (which makes the adapter
+ * switch to a filtered copy).
+ * 
+ * @param <T>
+ *            The type of item in the adapter
+ */
+public class ReorderableArrayAdapter<T> extends ArrayAdapter<T> implements ReorderableAdapter {
+    private List<T> mObjects;
+
+    public ReorderableArrayAdapter(Context context, int textViewResourceId, List<T> objects) {
+        super(context, textViewResourceId, objects);
+
+        mObjects = objects;
+    }
+
+    public ReorderableArrayAdapter(Context context, int resource, int textViewResourceId, List<T> objects) {
+        super(context, resource, textViewResourceId, objects);
+
+        mObjects = objects;
+    }
+
+    /*
+     * (non-Javadoc)
+     * 
+     * @see in.uncod.android.widget.ReorderableAdapter#moveItem(int, int)
+     */
+    @Override
+    public void moveItem(int fromPosition, int toPosition) {
+        moveItem(mObjects, fromPosition, toPosition);
+
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Moves an item within a list by rotating the range between the old and new positions
+     * 
+     * @param list
+     * @param fromPosition
+     * @param toPosition
+     */
+    public static void moveItem(List<?> list, int fromPosition, int toPosition) {
+        if (fromPosition < toPosition) {
+            Collections.rotate(list.subList(fromPosition, toPosition + 1), -1);
+        }
+        else if (fromPosition > toPosition) {
+            Collections.rotate(list.subList(toPosition, fromPosition + 1), 1);
+        }
+    }
+}